@@ -1,11 +1,15 @@
 package org.example;
 
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import org.example.polling.PollingProcessorVerticle;
 import org.example.polling.PollingSchedulerVerticle;
 import org.example.server.DBVerticle;
+import org.example.server.LocalCodec;
 import org.example.server.NmsServerVerticle;
 import org.example.service.QueryBuilderVerticle;
+import org.example.utils.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,31 +21,39 @@ public class Main {
 
     public static void main(String[] args)
     {
-        vertx.deployVerticle(new NmsServerVerticle())
+        LocalCodec.registerQueryCodecs(vertx.eventBus());
+
+        var options = new DeploymentOptions().setConfig(loadConfig(args.length > 0 ? args[0] : Constants.CONFIG_FILE));
+
+        vertx.deployVerticle(new NmsServerVerticle(), options)
                 .compose(res -> {
 
                     logger.info("NMS Server Verticle started successfully");
 
-                    return vertx.deployVerticle(new DBVerticle());
+                    var instances = options.getConfig().getInteger(Constants.CONFIG_DB_VERTICLE_INSTANCES, Constants.DEFAULT_DB_VERTICLE_INSTANCES);
+
+                    return vertx.deployVerticle(DBVerticle::new, new DeploymentOptions(options).setInstances(instances));
                 })
                 .compose(res-> {
 
                     logger.info("DB Verticle started successfully");
 
-                    return vertx.deployVerticle(new QueryBuilderVerticle());
+                    return vertx.deployVerticle(new QueryBuilderVerticle(), options);
+                })
+                .compose(res-> {
+
+                    logger.info("Query Builder Verticle started successfully");
+
+                    var instances = options.getConfig().getInteger(Constants.CONFIG_POLLING_PROCESSOR_INSTANCES, Constants.DEFAULT_POLLING_PROCESSOR_INSTANCES);
+
+                    return vertx.deployVerticle(PollingProcessorVerticle::new, new DeploymentOptions(options).setInstances(instances));
+                })
+                .compose(res-> {
+
+                    logger.info("processor Verticle started successfully");
+
+                    return vertx.deployVerticle(new PollingSchedulerVerticle(), options);
                 })
-//                .compose(res-> {
-//
-//                    logger.info("DB Verticle started successfully");
-//
-//                    return vertx.deployVerticle(new PollingProcessorVerticle());
-//                })
-//                .compose(res-> {
-//
-//                    logger.info("processor Verticle started successfully");
-//
-//                    return vertx.deployVerticle(new PollingSchedulerVerticle());
-//                })
                 .onSuccess(res-> {
 
                     logger.info("scheduler Verticle started successfully");
@@ -56,4 +68,18 @@ public class Main {
                 });
     }
 
-}
\ No newline at end of file
+    // Optional JSON config file shared by all verticles; every key falls back to its default in Constants
+    private static JsonObject loadConfig(String path)
+    {
+        if (!vertx.fileSystem().existsBlocking(path))
+        {
+            logger.info("No config file at {}, using defaults", path);
+
+            return new JsonObject();
+        }
+
+        logger.info("Loading config from {}", path);
+
+        return new JsonObject(vertx.fileSystem().readFileBlocking(path));
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.plugin;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+
+class PluginRequest
+{
+    final long requestId;
+
+    final String mode;
+
+    final JsonArray devices;
+
+    private final Context context;
+
+    private final Handler<JsonObject> resultHandler;
+
+    private final Promise<Void> promise;
+
+    long timerId = -1;
+
+    long dispatchedAt;
+
+    long lastResultAt;
+
+    int received;
+
+    boolean completed;
+
+    PluginRequest(long requestId, String mode, JsonArray devices, Context context, Handler<JsonObject> resultHandler, Promise<Void> promise)
+    {
+        this.requestId = requestId;
+
+        this.mode = mode;
+
+        this.devices = devices;
+
+        this.context = context;
+
+        this.resultHandler = resultHandler;
+
+        this.promise = promise;
+    }
+
+    String encode()
+    {
+        return new JsonObject()
+                .put(Constants.REQUEST_ID, requestId)
+                .put(Constants.MODE, mode)
+                .put(Constants.DEVICES, devices)
+                .encode();
+    }
+
+    Future<Void> future()
+    {
+        return promise.future();
+    }
+
+    String encodeCancel()
+    {
+        return new JsonObject()
+                .put(Constants.REQUEST_ID, requestId)
+                .put(Constants.CANCEL, true)
+                .encode();
+    }
+
+    boolean allDevicesReceived()
+    {
+        return received >= devices.size();
+    }
+
+    // Results are handed back on the caller's context, never on the plugin reader thread.
+    // runOnContext keeps them in arrival order and ahead of the final completion
+    void deliver(JsonObject result)
+    {
+        received++;
+
+        lastResultAt = System.currentTimeMillis();
+
+        context.runOnContext(v -> resultHandler.handle(result));
+    }
+
+    void complete()
+    {
+        context.runOnContext(v -> promise.complete());
+    }
+
+    void fail(String reason)
+    {
+        context.runOnContext(v -> promise.fail(reason));
+    }
+}
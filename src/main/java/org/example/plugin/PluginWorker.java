@@ -0,0 +1,143 @@
+package org.example.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// One long-lived plugin process. Requests are written to stdin and responses read from stdout,
+// one JSON document per line, on two dedicated threads so no event loop ever touches the pipes
+class PluginWorker
+{
+    private static final Logger logger = LoggerFactory.getLogger(PluginWorker.class);
+
+    private final int workerId;
+
+    private final Process process;
+
+    private final PluginWorkerPool pool;
+
+    private final BlockingQueue<String> outbound = new LinkedBlockingQueue<>();
+
+    private final Thread writerThread;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    PluginRequest currentRequest;
+
+    // Set by the pool once the process has said {"ready": true}
+    boolean ready;
+
+    long handshakeTimerId = -1;
+
+    // Armed while the worker finishes a request whose caller has already been answered
+    long drainTimerId = -1;
+
+    PluginWorker(int workerId, String command, PluginWorkerPool pool) throws IOException
+    {
+        this.workerId = workerId;
+
+        this.pool = pool;
+
+        this.process = new ProcessBuilder(command, PluginWorkerPool.SERVE_MODE)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        writerThread = startThread("plugin-writer-" + workerId, this::writeLoop);
+
+        startThread("plugin-reader-" + workerId, this::readLoop);
+
+        logger.info("Plugin worker {} started with pid {}", workerId, process.pid());
+    }
+
+    int getWorkerId()
+    {
+        return workerId;
+    }
+
+    long getUptime()
+    {
+        return System.currentTimeMillis() - startedAt;
+    }
+
+    void send(String line)
+    {
+        outbound.add(line);
+    }
+
+    void kill()
+    {
+        process.destroyForcibly();
+    }
+
+    private void writeLoop()
+    {
+        try (var writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)))
+        {
+            while (process.isAlive())
+            {
+                var line = outbound.take();
+
+                writer.write(line);
+
+                writer.newLine();
+
+                writer.flush();
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException exception)
+        {
+            logger.warn("Plugin worker {} stdin closed: {}", workerId, exception.getMessage());
+
+            kill();
+        }
+    }
+
+    private void readLoop()
+    {
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                if (!line.isBlank())
+                {
+                    pool.onResponse(this, line);
+                }
+            }
+        }
+        catch (IOException exception)
+        {
+            logger.warn("Plugin worker {} stdout closed: {}", workerId, exception.getMessage());
+        }
+
+        kill();
+
+        writerThread.interrupt();
+
+        pool.onWorkerExit(this);
+    }
+
+    private Thread startThread(String name, Runnable task)
+    {
+        var thread = new Thread(task, name);
+
+        thread.setDaemon(true);
+
+        thread.start();
+
+        return thread;
+    }
+}
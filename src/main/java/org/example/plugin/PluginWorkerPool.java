@@ -0,0 +1,712 @@
+package org.example.plugin;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Pool of persistent ssh-plugin processes started in "serve" mode.
+ *
+ * Protocol (one JSON document per line on stdin/stdout):
+ *   ready    <- {"ready": true}                       once, when the process can take requests
+ *   request  -> {"request_id": 7, "mode": "metrics", "devices": [...]}
+ *   result   <- {"request_id": 7, "id": 12, ...}      one line per device, as soon as it finishes
+ *   end      <- {"request_id": 7, "done": true}       or   {"request_id": 7, "error": "..."}
+ *   cancel   -> {"request_id": 7, "cancel": true}     the plugin should stop and send the end marker
+ *
+ * Device results are handed to the caller one by one as they are read, so a slow device only
+ * delays its own result. The request completes on the end marker or once every device answered.
+ *
+ * Each worker runs one request at a time. Requests beyond the pool size wait in a FIFO queue of
+ * at most plugin.max.pending.requests; once it is full new requests are rejected straight away.
+ * When no device result has arrived for the device timeout, or the request timeout has passed,
+ * the devices still pending are given up: the request completes with what it has (callers treat
+ * a missing device as failed), the plugin is asked to cancel, and the worker is killed unless its
+ * end marker follows within CANCEL_GRACE_MS. A request with no result at all is failed instead,
+ * and its worker killed straight away.
+ *
+ * A plugin build without serve mode never says ready: if the first worker exits or stays silent
+ * past the handshake timeout, the pool falls back for good to the one-shot protocol of older
+ * builds, one "ssh-plugin <mode>" process per request with the device array on stdin and a JSON
+ * array of results on stdout, at most pool size of them at a time.
+ *
+ * Workers that die young or cannot be started are restarted with exponential backoff. After
+ * BREAKER_THRESHOLD such failures in a row with no worker up, the circuit opens: queued requests
+ * are failed and new ones rejected until the backoff delay has passed, then the next start (or
+ * one-shot request) is let through as a probe and a success closes the circuit again.
+ */
+public class PluginWorkerPool
+{
+    private static final Logger logger = LoggerFactory.getLogger(PluginWorkerPool.class);
+
+    static final String SERVE_MODE = "serve";
+
+    private static final long RESTART_DELAY_MS = 1_000;
+
+    private static final long MAX_RESTART_DELAY_MS = 60_000;
+
+    private static final long HANDSHAKE_TIMEOUT_MS = 10_000;
+
+    // A worker that served this long before exiting is replaced without counting as a failure
+    private static final long STABLE_UPTIME_MS = 30_000;
+
+    private static final int BREAKER_THRESHOLD = 5;
+
+    private static final long CANCEL_GRACE_MS = 2_000;
+
+    private static PluginWorkerPool instance;
+
+    private final Vertx vertx;
+
+    private final String command;
+
+    private final int size;
+
+    private final long requestTimeout;
+
+    private final long deviceTimeout;
+
+    private final int maxPendingRequests;
+
+    private final List<PluginWorker> workers = new ArrayList<>();
+
+    private final ArrayDeque<PluginWorker> idleWorkers = new ArrayDeque<>();
+
+    private final ArrayDeque<PluginRequest> pendingRequests = new ArrayDeque<>();
+
+    private long nextRequestId;
+
+    private int nextWorkerId;
+
+    private boolean closed;
+
+    // Set once a worker has completed the handshake, after which silence is a fault and not a sign
+    // of an older plugin build
+    private boolean serveConfirmed;
+
+    private boolean oneShot;
+
+    private int runningOneShots;
+
+    private int consecutiveFailures;
+
+    private long circuitOpenUntil;
+
+    private PluginWorkerPool(Vertx vertx, JsonObject config)
+    {
+        this.vertx = vertx;
+
+        this.command = config.getString(Constants.CONFIG_PLUGIN_PATH, Constants.DEFAULT_PLUGIN_PATH);
+
+        this.size = config.getInteger(Constants.CONFIG_PLUGIN_POOL_SIZE, Constants.DEFAULT_PLUGIN_POOL_SIZE);
+
+        this.requestTimeout = config.getLong(Constants.CONFIG_PLUGIN_REQUEST_TIMEOUT_MS, Constants.DEFAULT_PLUGIN_REQUEST_TIMEOUT_MS);
+
+        this.deviceTimeout = config.getLong(Constants.CONFIG_PLUGIN_DEVICE_TIMEOUT_MS, Constants.DEFAULT_PLUGIN_DEVICE_TIMEOUT_MS);
+
+        this.maxPendingRequests = config.getInteger(Constants.CONFIG_PLUGIN_MAX_PENDING_REQUESTS, Constants.DEFAULT_PLUGIN_MAX_PENDING_REQUESTS);
+
+        synchronized (this)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (!spawnWorker())
+                {
+                    vertx.setTimer(recordFailure(), id -> restartWorker());
+                }
+            }
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    public static synchronized PluginWorkerPool getInstance(Vertx vertx, JsonObject config)
+    {
+        if (instance == null)
+        {
+            instance = new PluginWorkerPool(vertx, config);
+        }
+
+        return instance;
+    }
+
+    // A pool of its own, for a caller that wants the same workers for the same devices
+    public static PluginWorkerPool create(Vertx vertx, JsonObject config)
+    {
+        return new PluginWorkerPool(vertx, config);
+    }
+
+    public Future<JsonArray> execute(JsonArray devices, String mode)
+    {
+        var results = new JsonArray();
+
+        return stream(devices, mode, results::add).map(results);
+    }
+
+    public Future<Void> stream(JsonArray devices, String mode, Handler<JsonObject> resultHandler)
+    {
+        var promise = Promise.<Void>promise();
+
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return Future.failedFuture("Plugin worker pool is closed");
+            }
+
+            var retryIn = circuitOpenUntil - System.currentTimeMillis();
+
+            if (retryIn > 0)
+            {
+                return Future.failedFuture("Plugin unavailable, retrying in " + retryIn + " ms");
+            }
+
+            if (pendingRequests.size() >= maxPendingRequests)
+            {
+                return Future.failedFuture("Plugin request queue is full with " + pendingRequests.size() + " requests");
+            }
+
+            var request = new PluginRequest(++nextRequestId, mode, devices, vertx.getOrCreateContext(), resultHandler, promise);
+
+            pendingRequests.add(request);
+
+            dispatch();
+        }
+
+        return promise.future();
+    }
+
+    // Cancels a request returned by stream: a queued one is dropped and a running one given up, with
+    // its plugin asked to stop. Results already delivered stay delivered; the future fails either way
+    public synchronized void cancel(Future<Void> future)
+    {
+        for (var iterator = pendingRequests.iterator(); iterator.hasNext(); )
+        {
+            var request = iterator.next();
+
+            if (request.future() == future)
+            {
+                iterator.remove();
+
+                finish(request);
+
+                request.fail("Plugin request cancelled");
+
+                return;
+            }
+        }
+
+        for (var worker : workers)
+        {
+            var request = worker.currentRequest;
+
+            if (request != null && !request.completed && request.future() == future)
+            {
+                finish(request);
+
+                request.fail("Plugin request cancelled");
+
+                abandon(worker, request);
+
+                return;
+            }
+        }
+    }
+
+    public synchronized void close()
+    {
+        closed = true;
+
+        for (var worker : workers)
+        {
+            worker.kill();
+        }
+
+        failPending("Plugin worker pool is closed");
+    }
+
+    synchronized void onResponse(PluginWorker worker, String line)
+    {
+        var request = worker.currentRequest;
+
+        JsonObject response;
+
+        try
+        {
+            response = new JsonObject(line);
+        }
+        catch (Exception exception)
+        {
+            logger.warn("Plugin worker {} wrote malformed output: {}", worker.getWorkerId(), exception.getMessage());
+
+            return;
+        }
+
+        if (!worker.ready)
+        {
+            if (response.getBoolean(Constants.READY, false))
+            {
+                onWorkerReady(worker);
+            }
+
+            return;
+        }
+
+        if (request == null || request.requestId != response.getLong(Constants.REQUEST_ID, -1L))
+        {
+            // End marker after every device answered, or a late answer for a finished request
+            return;
+        }
+
+        if (request.completed)
+        {
+            // A worker draining a given-up request is free again once it sends the end marker
+            if (worker.drainTimerId != -1 && (response.containsKey(Constants.ERROR) || response.getBoolean(Constants.DONE, false)))
+            {
+                vertx.cancelTimer(worker.drainTimerId);
+
+                worker.drainTimerId = -1;
+
+                release(worker);
+            }
+
+            return;
+        }
+
+        if (response.containsKey(Constants.ERROR))
+        {
+            finish(request);
+
+            request.fail(response.getString(Constants.ERROR));
+        }
+        else if (response.getBoolean(Constants.DONE, false))
+        {
+            finish(request);
+
+            request.complete();
+        }
+        else
+        {
+            response.remove(Constants.REQUEST_ID);
+
+            request.deliver(response);
+
+            if (!request.allDevicesReceived())
+            {
+                return;
+            }
+
+            finish(request);
+
+            request.complete();
+        }
+
+        release(worker);
+    }
+
+    synchronized void onWorkerExit(PluginWorker worker)
+    {
+        logger.warn("Plugin worker {} exited", worker.getWorkerId());
+
+        workers.remove(worker);
+
+        idleWorkers.remove(worker);
+
+        vertx.cancelTimer(worker.handshakeTimerId);
+
+        var request = worker.currentRequest;
+
+        if (request != null && !request.completed)
+        {
+            finish(request);
+
+            request.fail("Plugin worker exited while processing request");
+        }
+
+        worker.currentRequest = null;
+
+        if (closed || oneShot)
+        {
+            return;
+        }
+
+        if (!worker.ready && !serveConfirmed)
+        {
+            useOneShot("exited before signalling ready");
+
+            return;
+        }
+
+        var delay = worker.ready && worker.getUptime() >= STABLE_UPTIME_MS ? RESTART_DELAY_MS : recordFailure();
+
+        vertx.setTimer(delay, id -> restartWorker());
+    }
+
+    private void onWorkerReady(PluginWorker worker)
+    {
+        if (!workers.contains(worker))
+        {
+            return;
+        }
+
+        worker.ready = true;
+
+        vertx.cancelTimer(worker.handshakeTimerId);
+
+        if (!serveConfirmed)
+        {
+            serveConfirmed = true;
+
+            logger.info("Plugin {} supports serve mode", command);
+        }
+
+        recordSuccess();
+
+        idleWorkers.add(worker);
+
+        dispatch();
+    }
+
+    private synchronized void onHandshakeTimeout(PluginWorker worker)
+    {
+        if (worker.ready || !workers.contains(worker))
+        {
+            return;
+        }
+
+        if (!serveConfirmed)
+        {
+            useOneShot("did not signal ready within " + HANDSHAKE_TIMEOUT_MS + " ms");
+
+            return;
+        }
+
+        logger.warn("Plugin worker {} did not signal ready within {} ms", worker.getWorkerId(), HANDSHAKE_TIMEOUT_MS);
+
+        // Its exit counts as a failed start
+        worker.kill();
+    }
+
+    private void useOneShot(String reason)
+    {
+        logger.warn("Plugin {} {} in serve mode, falling back to one process per request", command, reason);
+
+        oneShot = true;
+
+        for (var worker : workers)
+        {
+            vertx.cancelTimer(worker.handshakeTimerId);
+
+            worker.kill();
+        }
+
+        workers.clear();
+
+        idleWorkers.clear();
+
+        dispatch();
+    }
+
+    private synchronized void restartWorker()
+    {
+        if (closed || oneShot || workers.size() >= size)
+        {
+            return;
+        }
+
+        if (!spawnWorker())
+        {
+            vertx.setTimer(recordFailure(), id -> restartWorker());
+        }
+    }
+
+    private synchronized void onDeadline(PluginWorker worker, PluginRequest request)
+    {
+        if (request.completed)
+        {
+            return;
+        }
+
+        var now = System.currentTimeMillis();
+
+        var deadline = Math.min(request.dispatchedAt + requestTimeout, request.lastResultAt + deviceTimeout);
+
+        if (now < deadline)
+        {
+            // Devices are still answering, so wait for the next one
+            request.timerId = vertx.setTimer(deadline - now, id -> onDeadline(worker, request));
+
+            return;
+        }
+
+        var pending = request.devices.size() - request.received;
+
+        finish(request);
+
+        if (request.received == 0)
+        {
+            logger.warn("Plugin request {} timed out after {} ms on worker {} with no device answered",
+                    request.requestId, now - request.dispatchedAt, worker.getWorkerId());
+
+            request.fail("Plugin request timed out with " + pending + " devices pending");
+
+            // The worker may still be busy with the abandoned request, so replace it
+            worker.kill();
+
+            return;
+        }
+
+        logger.warn("Plugin request {} gave up on {} of {} devices after {} ms on worker {}",
+                request.requestId, pending, request.devices.size(), now - request.dispatchedAt, worker.getWorkerId());
+
+        request.complete();
+
+        abandon(worker, request);
+    }
+
+    // Asks the plugin to stop a request the caller has been answered for, and keeps the worker out of
+    // the pool until it confirms
+    private void abandon(PluginWorker worker, PluginRequest request)
+    {
+        worker.send(request.encodeCancel());
+
+        worker.drainTimerId = vertx.setTimer(CANCEL_GRACE_MS, id -> onDrainTimeout(worker, request));
+    }
+
+    private synchronized void onDrainTimeout(PluginWorker worker, PluginRequest request)
+    {
+        if (worker.currentRequest != request)
+        {
+            return;
+        }
+
+        logger.warn("Plugin worker {} did not end request {} after cancel, replacing it", worker.getWorkerId(), request.requestId);
+
+        worker.kill();
+    }
+
+    // Returns the delay before the next start attempt, and opens the circuit once starts keep
+    // failing with no worker up to serve the queue
+    private long recordFailure()
+    {
+        consecutiveFailures++;
+
+        var delay = Math.min(MAX_RESTART_DELAY_MS, RESTART_DELAY_MS << Math.min(consecutiveFailures - 1, 16));
+
+        if (consecutiveFailures >= BREAKER_THRESHOLD && workers.stream().noneMatch(worker -> worker.ready))
+        {
+            if (circuitOpenUntil == 0)
+            {
+                logger.error("Plugin {} failed {} times in a row, rejecting requests while it is retried", command, consecutiveFailures);
+            }
+
+            circuitOpenUntil = System.currentTimeMillis() + delay;
+
+            failPending("Plugin unavailable after " + consecutiveFailures + " failed starts");
+        }
+
+        return delay;
+    }
+
+    private void recordSuccess()
+    {
+        if (circuitOpenUntil != 0)
+        {
+            logger.info("Plugin {} recovered, accepting requests again", command);
+        }
+
+        consecutiveFailures = 0;
+
+        circuitOpenUntil = 0;
+    }
+
+    private void failPending(String reason)
+    {
+        for (var request : pendingRequests)
+        {
+            request.fail(reason);
+        }
+
+        pendingRequests.clear();
+    }
+
+    private boolean spawnWorker()
+    {
+        try
+        {
+            var worker = new PluginWorker(++nextWorkerId, command, this);
+
+            workers.add(worker);
+
+            worker.handshakeTimerId = vertx.setTimer(HANDSHAKE_TIMEOUT_MS, id -> onHandshakeTimeout(worker));
+
+            return true;
+        }
+        catch (Exception exception)
+        {
+            logger.error("Failed to start plugin worker: {}", exception.getMessage());
+
+            return false;
+        }
+    }
+
+    private void dispatch()
+    {
+        if (oneShot)
+        {
+            while (runningOneShots < size && !pendingRequests.isEmpty())
+            {
+                runOneShot(pendingRequests.poll());
+            }
+
+            return;
+        }
+
+        while (!idleWorkers.isEmpty() && !pendingRequests.isEmpty())
+        {
+            var worker = idleWorkers.poll();
+
+            var request = pendingRequests.poll();
+
+            worker.currentRequest = request;
+
+            request.dispatchedAt = request.lastResultAt = System.currentTimeMillis();
+
+            request.timerId = vertx.setTimer(Math.min(deviceTimeout, requestTimeout), id -> onDeadline(worker, request));
+
+            worker.send(request.encode());
+        }
+    }
+
+    private void release(PluginWorker worker)
+    {
+        worker.currentRequest = null;
+
+        idleWorkers.add(worker);
+
+        dispatch();
+    }
+
+    private void runOneShot(PluginRequest request)
+    {
+        runningOneShots++;
+
+        vertx.executeBlocking(() -> execOneShot(request), false).onComplete(result ->
+        {
+            synchronized (this)
+            {
+                runningOneShots--;
+
+                if (result.succeeded())
+                {
+                    recordSuccess();
+
+                    var results = result.result();
+
+                    for (int i = 0; i < results.size(); i++)
+                    {
+                        request.deliver(results.getJsonObject(i));
+                    }
+
+                    finish(request);
+
+                    request.complete();
+                }
+                else
+                {
+                    if (result.cause() instanceof IOException)
+                    {
+                        recordFailure();
+                    }
+
+                    finish(request);
+
+                    request.fail(result.cause().getMessage());
+                }
+
+                dispatch();
+            }
+        });
+    }
+
+    // The protocol of plugin builds without serve mode, run on a worker thread
+    private JsonArray execOneShot(PluginRequest request) throws IOException, InterruptedException
+    {
+        var process = new ProcessBuilder(command, request.mode)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        var timedOut = new AtomicBoolean();
+
+        var timerId = vertx.setTimer(requestTimeout, id ->
+        {
+            timedOut.set(true);
+
+            process.destroyForcibly();
+        });
+
+        try
+        {
+            try (var writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)))
+            {
+                writer.write(request.devices.encode());
+            }
+
+            var output = new StringBuilder();
+
+            try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+            {
+                String line;
+
+                while ((line = reader.readLine()) != null)
+                {
+                    output.append(line);
+                }
+            }
+
+            var exitCode = process.waitFor();
+
+            if (timedOut.get())
+            {
+                throw new IllegalStateException("Plugin request timed out after " + requestTimeout + " ms");
+            }
+
+            if (exitCode != 0)
+            {
+                throw new IllegalStateException("Plugin exited with code " + exitCode);
+            }
+
+            return new JsonArray(output.toString());
+        }
+        finally
+        {
+            vertx.cancelTimer(timerId);
+
+            process.destroy();
+        }
+    }
+
+    private void finish(PluginRequest request)
+    {
+        request.completed = true;
+
+        vertx.cancelTimer(request.timerId);
+    }
+}
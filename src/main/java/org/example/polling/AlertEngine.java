@@ -0,0 +1,178 @@
+package org.example.polling;
+
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Evaluates threshold rules against device results as they arrive from the plugin.
+ *
+ * Rules are compiled once and indexed by metric name, so a result only costs a map lookup per
+ * metric it carries plus one predicate per rule on that metric, however many rules exist on
+ * other metrics. Per device the engine keeps one consecutive-breach counter per rule and a bit
+ * per firing rule. A rule raises once its metric breached the threshold on `consecutive`
+ * results in a row and clears on the first result that does not breach; results that lack the
+ * metric leave its state untouched. Only state changes are published, on EVENTBUS_ALERT_ADDRESS.
+ *
+ * State lives in the processor instance the device is hashed to, so a processor joining or
+ * leaving restarts the streaks of the devices that move. A device is dropped once it is deleted,
+ * leased to another node, hashed to another processor, or its processor stops; each rule still
+ * firing on it is published as cleared, so no alert is left raised by a device nobody evaluates.
+ */
+class AlertEngine
+{
+    private static final Logger logger = LoggerFactory.getLogger(AlertEngine.class);
+
+    private static final List<AlertRule> NO_RULES = List.of();
+
+    private static final class DeviceState
+    {
+        final short[] streaks;
+
+        final BitSet firing = new BitSet();
+
+        DeviceState(int ruleCount)
+        {
+            streaks = new short[ruleCount];
+        }
+    }
+
+    private final EventBus eventBus;
+
+    private final Map<String, List<AlertRule>> rulesByMetric = new HashMap<>();
+
+    // Indexed by AlertRule.index
+    private final List<AlertRule> rules = new ArrayList<>();
+
+    private final Map<Integer, DeviceState> devices = new HashMap<>();
+
+    private int ruleCount;
+
+    AlertEngine(EventBus eventBus, JsonArray rules)
+    {
+        this.eventBus = eventBus;
+
+        for (int i = 0; i < rules.size(); i++)
+        {
+            try
+            {
+                var rule = AlertRule.compile(ruleCount, rules.getJsonObject(i));
+
+                rulesByMetric.computeIfAbsent(rule.metric, metric -> new ArrayList<>()).add(rule);
+
+                this.rules.add(rule);
+
+                ruleCount++;
+            }
+            catch (RuntimeException exception)
+            {
+                logger.warn("Skipping alert rule: {}", exception.getMessage());
+            }
+        }
+    }
+
+    int getRuleCount()
+    {
+        return ruleCount;
+    }
+
+    void evaluate(JsonObject deviceResult)
+    {
+        var id = deviceResult.getInteger(Constants.ID);
+
+        if (ruleCount == 0 || id == null || !(deviceResult.getValue(Constants.DATA) instanceof JsonObject data))
+        {
+            return;
+        }
+
+        DeviceState state = null;
+
+        for (var metric : data)
+        {
+            var rules = rulesByMetric.getOrDefault(metric.getKey(), NO_RULES);
+
+            if (rules.isEmpty() || !(metric.getValue() instanceof Number number))
+            {
+                continue;
+            }
+
+            if (state == null)
+            {
+                state = devices.computeIfAbsent(id, device -> new DeviceState(ruleCount));
+            }
+
+            var value = number.doubleValue();
+
+            for (var rule : rules)
+            {
+                if (rule.breached.test(value))
+                {
+                    if (state.streaks[rule.index] < rule.consecutive)
+                    {
+                        state.streaks[rule.index]++;
+                    }
+
+                    if (state.streaks[rule.index] == rule.consecutive && !state.firing.get(rule.index))
+                    {
+                        state.firing.set(rule.index);
+
+                        publish(id, rule, value, Constants.ALERT_RAISED, deviceResult.getString(Constants.POLLED_AT));
+                    }
+                }
+                else
+                {
+                    state.streaks[rule.index] = 0;
+
+                    if (state.firing.get(rule.index))
+                    {
+                        state.firing.clear(rule.index);
+
+                        publish(id, rule, value, Constants.ALERT_CLEARED, deviceResult.getString(Constants.POLLED_AT));
+                    }
+                }
+            }
+        }
+    }
+
+    // The cleared events carry no value, since no result of the device triggered them
+    void drop(int id)
+    {
+        var state = devices.remove(id);
+
+        if (state == null)
+        {
+            return;
+        }
+
+        var clearedAt = OffsetDateTime.now().toString();
+
+        state.firing.stream().forEach(index -> publish(id, rules.get(index), null, Constants.ALERT_CLEARED, clearedAt));
+    }
+
+    void dropAll()
+    {
+        new ArrayList<>(devices.keySet()).forEach(this::drop);
+    }
+
+    private void publish(int id, AlertRule rule, Double value, String alertState, String polledAt)
+    {
+        eventBus.publish(Constants.EVENTBUS_ALERT_ADDRESS, new JsonObject()
+                .put(Constants.ID, id)
+                .put("rule", rule.name)
+                .put(Constants.METRIC, rule.metric)
+                .put("value", value)
+                .put("threshold", rule.threshold)
+                .put("state", alertState)
+                .put(Constants.POLLED_AT, polledAt));
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.polling;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.function.DoublePredicate;
+
+/*
+ * One threshold rule, compiled from its config form
+ *   {"name": "cpu-high", "metric": "cpu_usage", "operator": ">", "threshold": 90, "consecutive": 3}
+ * into a predicate on the metric value. index is the rule's slot in per-device alert state.
+ */
+final class AlertRule
+{
+    final int index;
+
+    final String name;
+
+    final String metric;
+
+    final double threshold;
+
+    final int consecutive;
+
+    final DoublePredicate breached;
+
+    private AlertRule(int index, String name, String metric, double threshold, int consecutive, DoublePredicate breached)
+    {
+        this.index = index;
+
+        this.name = name;
+
+        this.metric = metric;
+
+        this.threshold = threshold;
+
+        this.consecutive = consecutive;
+
+        this.breached = breached;
+    }
+
+    static AlertRule compile(int index, JsonObject config)
+    {
+        var name = config.getString("name");
+
+        var metric = config.getString("metric");
+
+        var threshold = config.getDouble("threshold");
+
+        var consecutive = config.getInteger("consecutive", 1);
+
+        if (name == null || metric == null || threshold == null || consecutive < 1 || consecutive > Short.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Invalid alert rule: " + config.encode());
+        }
+
+        DoublePredicate breached = switch (config.getString("operator", ">"))
+        {
+            case ">" -> value -> value > threshold;
+
+            case ">=" -> value -> value >= threshold;
+
+            case "<" -> value -> value < threshold;
+
+            case "<=" -> value -> value <= threshold;
+
+            case "==" -> value -> value == threshold;
+
+            case "!=" -> value -> value != threshold;
+
+            default -> throw new IllegalArgumentException("Invalid alert rule operator: " + config.encode());
+        };
+
+        return new AlertRule(index, name, metric, threshold, consecutive, breached);
+    }
+}
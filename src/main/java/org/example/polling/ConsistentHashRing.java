@@ -0,0 +1,82 @@
+package org.example.polling;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Consistent hash ring mapping provisioning job ids to polling processor addresses.
+ *
+ * Every member is placed on the ring at VIRTUAL_NODES points, so jobs spread evenly and adding
+ * or removing one of N members only moves about 1/N of the jobs; all other jobs keep their owner.
+ */
+class ConsistentHashRing
+{
+    private static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Integer, String> ring = new TreeMap<>();
+
+    boolean isEmpty()
+    {
+        return ring.isEmpty();
+    }
+
+    void add(String member)
+    {
+        for (int i = 0; i < VIRTUAL_NODES; i++)
+        {
+            ring.put(hash(member + "#" + i), member);
+        }
+    }
+
+    void remove(String member)
+    {
+        for (int i = 0; i < VIRTUAL_NODES; i++)
+        {
+            ring.remove(hash(member + "#" + i), member);
+        }
+    }
+
+    String owner(int jobId)
+    {
+        if (ring.isEmpty())
+        {
+            return null;
+        }
+
+        Map.Entry<Integer, String> entry = ring.ceilingEntry(mix(jobId));
+
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    // FNV-1a followed by a final avalanche so similar member names land far apart
+    private static int hash(String key)
+    {
+        var hash = 0x811C9DC5;
+
+        for (var b : key.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= b;
+
+            hash *= 0x01000193;
+        }
+
+        return mix(hash);
+    }
+
+    // Murmur3 finalizer; sequential job ids would otherwise cluster on one arc of the ring
+    private static int mix(int value)
+    {
+        value ^= value >>> 16;
+
+        value *= 0x85EBCA6B;
+
+        value ^= value >>> 13;
+
+        value *= 0xC2B2AE35;
+
+        value ^= value >>> 16;
+
+        return value;
+    }
+}
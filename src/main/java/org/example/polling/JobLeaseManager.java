@@ -0,0 +1,191 @@
+package org.example.polling;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Splits provisioning jobs across NMS nodes that share one database.
+ *
+ * Jobs are grouped into POLLING_LEASE_BUCKETS buckets by id modulo the bucket count, and every
+ * bucket row in polling_leases is leased by at most one node. On each renewal a node heartbeats
+ * into polling_nodes, extends the leases it still holds, and then claims free or expired buckets
+ * (FOR UPDATE SKIP LOCKED, so concurrent nodes never claim the same one) or releases surplus ones
+ * until it holds its fair share of buckets among the live nodes. Leases of a dead node expire
+ * after the lease TTL and are picked up by the survivors on their next renewal.
+ */
+class JobLeaseManager
+{
+    private static final Logger logger = LoggerFactory.getLogger(JobLeaseManager.class);
+
+    private static final String QUERY_HEARTBEAT = """
+            INSERT INTO polling_nodes (node_id, heartbeat_at)
+            VALUES ($1, now())
+            ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = now()
+            RETURNING node_id
+        """;
+
+    private static final String QUERY_COUNT_LIVE_NODES = """
+            SELECT count(*) AS live_nodes
+            FROM polling_nodes
+            WHERE heartbeat_at > now() - $1::int * INTERVAL '1 millisecond'
+        """;
+
+    private static final String QUERY_RENEW_LEASES = """
+            UPDATE polling_leases
+            SET expires_at = now() + $2::int * INTERVAL '1 millisecond'
+            WHERE node_id = $1 AND expires_at > now()
+            RETURNING bucket
+        """;
+
+    private static final String QUERY_CLAIM_LEASES = """
+            UPDATE polling_leases
+            SET node_id = $1, expires_at = now() + $2::int * INTERVAL '1 millisecond'
+            WHERE bucket IN (
+                SELECT bucket
+                FROM polling_leases
+                WHERE node_id IS NULL OR expires_at <= now()
+                ORDER BY bucket
+                LIMIT $3
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING bucket
+        """;
+
+    private static final String QUERY_RELEASE_LEASES = """
+            UPDATE polling_leases
+            SET node_id = NULL, expires_at = now()
+            WHERE node_id = $1 AND bucket IN (
+                SELECT bucket
+                FROM polling_leases
+                WHERE node_id = $1
+                ORDER BY bucket DESC
+                LIMIT $2
+            )
+            RETURNING bucket
+        """;
+
+    private final Vertx vertx;
+
+    private final String nodeId;
+
+    private final int leaseTtl;
+
+    private Set<Integer> ownedBuckets = new HashSet<>();
+
+    JobLeaseManager(Vertx vertx, String nodeId, int leaseTtl)
+    {
+        this.vertx = vertx;
+
+        this.nodeId = nodeId;
+
+        this.leaseTtl = leaseTtl;
+    }
+
+    String getNodeId()
+    {
+        return nodeId;
+    }
+
+    int getOwnedBucketCount()
+    {
+        return ownedBuckets.size();
+    }
+
+    // Runs one heartbeat/renew/rebalance round; completes with true when the owned bucket set changed
+    Future<Boolean> renew()
+    {
+        var previous = ownedBuckets;
+
+        var current = new HashSet<Integer>();
+
+        return query(QUERY_HEARTBEAT, new JsonArray().add(nodeId))
+                .compose(v -> query(QUERY_COUNT_LIVE_NODES, new JsonArray().add(leaseTtl)))
+                .compose(rows ->
+                {
+                    var liveNodes = Math.max(1, rows.getJsonObject(0).getLong("live_nodes").intValue());
+
+                    var fairShare = (Constants.POLLING_LEASE_BUCKETS + liveNodes - 1) / liveNodes;
+
+                    return query(QUERY_RENEW_LEASES, new JsonArray().add(nodeId).add(leaseTtl))
+                            .compose(renewed ->
+                            {
+                                addBuckets(renewed, current);
+
+                                if (current.size() < fairShare)
+                                {
+                                    return query(QUERY_CLAIM_LEASES, new JsonArray().add(nodeId).add(leaseTtl).add(fairShare - current.size()))
+                                            .map(claimed -> addBuckets(claimed, current));
+                                }
+
+                                if (current.size() > fairShare)
+                                {
+                                    return query(QUERY_RELEASE_LEASES, new JsonArray().add(nodeId).add(current.size() - fairShare))
+                                            .map(released -> removeBuckets(released, current));
+                                }
+
+                                return Future.succeededFuture(current);
+                            });
+                })
+                .map(owned ->
+                {
+                    ownedBuckets = owned;
+
+                    var changed = !owned.equals(previous);
+
+                    if (changed)
+                    {
+                        logger.info("Node {} now leases {} of {} polling buckets", nodeId, owned.size(), Constants.POLLING_LEASE_BUCKETS);
+                    }
+
+                    return changed;
+                });
+    }
+
+    private Set<Integer> addBuckets(JsonArray rows, Set<Integer> buckets)
+    {
+        for (int i = 0; i < rows.size(); i++)
+        {
+            buckets.add(rows.getJsonObject(i).getInteger(Constants.BUCKET));
+        }
+
+        return buckets;
+    }
+
+    private Set<Integer> removeBuckets(JsonArray rows, Set<Integer> buckets)
+    {
+        for (int i = 0; i < rows.size(); i++)
+        {
+            buckets.remove(rows.getJsonObject(i).getInteger(Constants.BUCKET));
+        }
+
+        return buckets;
+    }
+
+    private Future<JsonArray> query(String query, JsonArray params)
+    {
+        var request = new JsonObject()
+                .put(Constants.QUERY, query)
+                .put(Constants.PARAMS, params);
+
+        return vertx.eventBus().<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, request)
+                .compose(reply ->
+                {
+                    var response = reply.body();
+
+                    if (!response.getBoolean(Constants.SUCCESS, false))
+                    {
+                        return Future.failedFuture("DB query failed: " + response.getString(Constants.ERROR));
+                    }
+
+                    return Future.succeededFuture(response.getJsonArray(Constants.DATA));
+                });
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.polling;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Most recent polled result of every provisioning job, keyed by job id.
+ *
+ * Processor instances replace a job's entry as each result arrives and HTTP handlers read it
+ * directly, so current-state queries for jobs this node polls never reach the database. Entries are
+ * immutable once stored (a new result replaces the whole object), which makes unsynchronised reads
+ * safe from any thread.
+ *
+ * The cache is per node, and a node only polls the jobs of the lease buckets it holds. Only jobs the
+ * scheduler has tracked are cached; once a job is deleted or its bucket moves to another node it is
+ * removed, and a result of it still in flight is not stored. A miss therefore means the job is
+ * polled elsewhere (or not yet at all), and the HTTP handlers then read the last stored sample from
+ * provisioned_data instead. Memory is bounded by the number of jobs this node polls.
+ */
+public class LatestSampleCache
+{
+    private static final LatestSampleCache instance = new LatestSampleCache();
+
+    private final ConcurrentHashMap<Integer, JsonObject> samples = new ConcurrentHashMap<>();
+
+    private final Set<Integer> trackedJobs = ConcurrentHashMap.newKeySet();
+
+    private LatestSampleCache()
+    {
+    }
+
+    public static LatestSampleCache getInstance()
+    {
+        return instance;
+    }
+
+    public void put(JsonObject deviceResult)
+    {
+        var id = deviceResult.getInteger(Constants.ID);
+
+        if (id == null)
+        {
+            return;
+        }
+
+        samples.put(id, deviceResult);
+
+        // Stored first and checked after, so a remove racing with this put always wins
+        if (!trackedJobs.contains(id))
+        {
+            samples.remove(id, deviceResult);
+        }
+    }
+
+    // Called by the scheduler when a job is scheduled on this node
+    public void track(int id)
+    {
+        trackedJobs.add(id);
+    }
+
+    public JsonObject get(int id)
+    {
+        return samples.get(id);
+    }
+
+    // Cached samples are added to result; ids without one are added to missing
+    public void getAll(JsonArray ids, JsonArray result, JsonArray missing)
+    {
+        for (int i = 0; i < ids.size(); i++)
+        {
+            if (ids.getValue(i) instanceof Integer id)
+            {
+                var sample = samples.get(id);
+
+                if (sample != null)
+                {
+                    result.add(sample);
+                }
+                else
+                {
+                    missing.add(id);
+                }
+            }
+        }
+    }
+
+    public void remove(int id)
+    {
+        trackedJobs.remove(id);
+
+        samples.remove(id);
+    }
+
+    public int size()
+    {
+        return samples.size();
+    }
+}
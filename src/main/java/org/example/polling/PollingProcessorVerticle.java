@@ -1,95 +1,162 @@
 package org.example.polling;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import org.example.plugin.PluginWorkerPool;
 import org.example.utils.Constants;
-import org.example.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.UUID;
+
 public class PollingProcessorVerticle extends AbstractVerticle
 {
     private static final Logger logger = LoggerFactory.getLogger(PollingProcessorVerticle.class);
 
-    private static final String QUERY_INSERT_PROVISIONED_DATA = """
-            INSERT INTO provisioned_data (job_id, data, polled_at)
-            VALUES ($1, $2, $3)
-        """;
+    private final String processorAddress = Constants.EVENTBUS_POLLING_PROCESSOR_ADDRESS + "." + UUID.randomUUID();
+
+    private PluginWorkerPool pluginPool;
+
+    private final LatestSampleCache latestSamples = LatestSampleCache.getInstance();
+
+    private AlertEngine alertEngine;
+
+    // Batch id -> plugin request of every batch not yet replied to
+    private final HashMap<String, Future<Void>> batches = new HashMap<>();
 
     @Override
     public void start(Promise<Void> startPromise)
     {
-        vertx.eventBus().consumer(Constants.EVENTBUS_POLLING_PROCESSOR_ADDRESS, this::handlePollingBatch);
+        // Each instance gets its share of the plugin workers to itself, so the devices the ring
+        // routes here are always polled by the same plugin processes
+        var instances = config().getInteger(Constants.CONFIG_POLLING_PROCESSOR_INSTANCES, Constants.DEFAULT_POLLING_PROCESSOR_INSTANCES);
 
-        startPromise.complete();
-    }
+        var poolSize = Math.max(1, config().getInteger(Constants.CONFIG_PLUGIN_POOL_SIZE, Constants.DEFAULT_PLUGIN_POOL_SIZE) / instances);
 
-    private void handlePollingBatch(Message<JsonArray> message)
-    {
-        var deviceBatch = message.body();
+        pluginPool = PluginWorkerPool.create(vertx, config().copy().put(Constants.CONFIG_PLUGIN_POOL_SIZE, poolSize));
 
-        logger.info("Received device batch of size: {}", deviceBatch.size());
+        alertEngine = new AlertEngine(vertx.eventBus(), config().getJsonArray(Constants.CONFIG_ALERT_RULES, new JsonArray()));
 
-        vertx.executeBlocking(promise ->
+        // Every instance owns its own address; the scheduler routes each job to one instance by
+        // consistent hashing and learns about live instances from these heartbeats
+        vertx.eventBus().consumer(processorAddress, this::handlePollingBatch).completionHandler(result ->
         {
-            var pluginOutput = Utils.runGoPlugin(deviceBatch, Constants.METRICS);
-
-            if (pluginOutput.isEmpty())
+            if (result.failed())
             {
-                promise.fail("Go plugin execution failed");
-                
+                startPromise.fail(result.cause());
+
                 return;
             }
 
-            var processedData = new JsonArray(pluginOutput);
+            vertx.eventBus().<String>consumer(processorAddress + Constants.POLLING_PROCESSOR_CANCEL_SUFFIX, this::handleCancelBatch);
 
-            logger.info("Plugin processed batch, sending {} entries to DB", processedData.size());
+            vertx.eventBus().<JsonArray>consumer(processorAddress + Constants.POLLING_PROCESSOR_RELEASE_SUFFIX, message -> dropJobs(message.body()));
 
-            sendToDatabase(processedData);
+            vertx.eventBus().<JsonArray>consumer(Constants.EVENTBUS_POLLING_JOBS_DROPPED_ADDRESS, message -> dropJobs(message.body()));
 
-            promise.complete();
+            vertx.eventBus().consumer(Constants.EVENTBUS_POLLING_PROCESSOR_DISCOVER_ADDRESS, message -> announce());
 
-        },false, res ->
-        {
-            if (res.failed())
-            {
-                logger.error(res.cause().getMessage());
-            }
+            announce();
+
+            vertx.setPeriodic(Constants.POLLING_PROCESSOR_HEARTBEAT_MS, id -> announce());
+
+            logger.info("Polling processor listening on {} with {} alert rules", processorAddress, alertEngine.getRuleCount());
+
+            startPromise.complete();
         });
     }
 
-    private void sendToDatabase(JsonArray polledResults)
+    @Override
+    public void stop()
     {
-        var batchParams = new JsonArray();
+        vertx.eventBus().publish(Constants.EVENTBUS_POLLING_PROCESSOR_LEAVE_ADDRESS, processorAddress);
 
-        for (int i = 0; i < polledResults.size(); i++){
+        alertEngine.dropAll();
 
-            var deviceResult = polledResults.getJsonObject(i);
+        pluginPool.close();
+    }
 
-            batchParams.add(new JsonArray()
-                    .add(deviceResult.getInteger(Constants.ID))
-                    .add(deviceResult.getJsonObject(Constants.DATA))
-                    .add(deviceResult.getString(Constants.POLLED_AT)));
+    private void dropJobs(JsonArray ids)
+    {
+        for (int i = 0; i < ids.size(); i++)
+        {
+            alertEngine.drop(ids.getInteger(i));
         }
+    }
+
+    private void announce()
+    {
+        vertx.eventBus().publish(Constants.EVENTBUS_POLLING_PROCESSOR_HEARTBEAT_ADDRESS, processorAddress);
+    }
 
-        var request = new JsonObject()
-                .put(Constants.QUERY, QUERY_INSERT_PROVISIONED_DATA)
-                .put(Constants.PARAMS, batchParams);
+    private void handlePollingBatch(Message<JsonArray> message)
+    {
+        var deviceBatch = message.body();
 
-        vertx.eventBus().request(Constants.EVENTBUS_DATABASE_ADDRESS, request, reply ->
+        logger.info("Received device batch of size: {}", deviceBatch.size());
+
+        var batchId = message.headers().get(Constants.BATCH_ID);
+
+        // Each device result is persisted as soon as the plugin emits it, and the reply
+        // hands the in-flight credit back to the scheduler
+        var batch = pluginPool.stream(deviceBatch, Constants.METRICS, this::handleDeviceResult);
+
+        batches.put(batchId, batch);
+
+        batch.onComplete(v -> batches.remove(batchId))
+                .onSuccess(v ->
+                {
+                    logger.info("Plugin processed batch of {} devices", deviceBatch.size());
+
+                    message.reply(new JsonObject().put(Constants.SUCCESS, true));
+                })
+                .onFailure(err ->
+                {
+                    logger.error("Go plugin execution failed: {}", err.getMessage());
+
+                    message.fail(500, err.getMessage());
+                });
+    }
+
+    // Sent by the scheduler when it stopped waiting for a batch. The reply, which returns the batch's
+    // credit, only goes out once the plugin request is dropped from the queue or has ended
+    private void handleCancelBatch(Message<String> message)
+    {
+        var batch = batches.get(message.body());
+
+        if (batch == null)
         {
-            if (reply.failed())
-            {
-                logger.error("Batch update of provision failed: {}", reply.cause().getMessage());
-            }
-            else
-            {
-                logger.info("Batch update of provision completed");
-            }
-        });
+            message.reply(new JsonObject().put(Constants.SUCCESS, true));
+
+            return;
+        }
+
+        logger.warn("Cancelling polling batch {}", message.body());
+
+        pluginPool.cancel(batch);
+
+        batch.onComplete(v -> message.reply(new JsonObject().put(Constants.SUCCESS, true)));
     }
 
+    // The latest-sample cache, the alert engine and the ingestion path see the same result, stamped with
+    // its poll time when the plugin did not provide one; ingestion coalesces results from all batches into bulk inserts
+    private void handleDeviceResult(JsonObject deviceResult)
+    {
+        if (!deviceResult.containsKey(Constants.POLLED_AT))
+        {
+            deviceResult.put(Constants.POLLED_AT, OffsetDateTime.now().toString());
+        }
+
+        latestSamples.put(deviceResult);
+
+        alertEngine.evaluate(deviceResult);
+
+        vertx.eventBus().send(Constants.EVENTBUS_INGESTION_ADDRESS, deviceResult);
+    }
 }
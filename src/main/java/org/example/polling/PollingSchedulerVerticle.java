@@ -1,85 +1,561 @@
 package org.example.polling;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.example.utils.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
 public class PollingSchedulerVerticle extends AbstractVerticle
 {
     private static final Logger logger = LoggerFactory.getLogger(PollingSchedulerVerticle.class);
 
-    private static final int BATCH_SIZE = 2;
+    private static final long TICK_MS = 1_000;
+
+    // Only jobs whose lease bucket is currently held by this node are scheduled and polled
+    private static final String QUERY_FETCH_SCHEDULE = """
+            SELECT pj.id AS id, pj.polling_interval
+            FROM provisioning_jobs pj
+            JOIN polling_leases pl ON pl.bucket = pj.id %% %d
+            WHERE pj.id > $1 AND pl.node_id = $3 AND pl.expires_at > now()
+            ORDER BY pj.id
+            LIMIT $2
+        """.formatted(Constants.POLLING_LEASE_BUCKETS);
 
     private static final String QUERY_FETCH_JOBS = """
             SELECT pj.id AS id, pj.ip, pj.port, cp.credentials
             FROM provisioning_jobs pj
             JOIN credential_profiles cp ON pj.credential_profile_id = cp.id
-            ORDER BY pj.id
-            LIMIT $1 OFFSET $2
-        """;
+            JOIN polling_leases pl ON pl.bucket = pj.id %%%% %d
+            WHERE pl.node_id = $1 AND pl.expires_at > now() AND pj.id IN (%%s)
+        """.formatted(Constants.POLLING_LEASE_BUCKETS);
+
+    private final TimerWheel timerWheel = new TimerWheel();
+
+    private final LatestSampleCache latestSamples = LatestSampleCache.getInstance();
+
+    private final ConsistentHashRing processorRing = new ConsistentHashRing();
+
+    // Processor address -> time of its last heartbeat
+    private final HashMap<String, Long> processors = new HashMap<>();
+
+    // Processor address -> batch id -> completion of every shard still holding part of a credit
+    private final HashMap<String, HashMap<String, Promise<Void>>> outstandingShards = new HashMap<>();
+
+    private record DueJob(int jobId, long dueAt) {}
+
+    // Jobs that are due but waiting for a free in-flight slot. A job is queued at most once, so
+    // the backlog is bounded by the number of provisioned devices however slow the processor is
+    private final ArrayDeque<DueJob> dueJobs = new ArrayDeque<>();
+
+    private final Set<Integer> queuedJobs = new HashSet<>();
+
+    private JobLeaseManager leaseManager;
+
+    private int batchSize;
+
+    private int maxInFlight;
+
+    private long batchTimeout;
+
+    private int inFlight;
+
+    private long dispatchedBatches;
+
+    private long nextShardId;
+
+    private long dispatchedJobs;
+
+    private long skippedPolls;
+
+    private long totalWaitMs;
+
+    private long maxWaitMs;
+
+    private long startedAt;
+
+    private boolean syncInProgress;
 
     @Override
     public void start(Promise<Void> startPromise)
     {
-        vertx.setPeriodic(60_000, 300_000, id -> runPollingScheduler());
+        batchSize = config().getInteger(Constants.CONFIG_POLLING_BATCH_SIZE, Constants.DEFAULT_POLLING_BATCH_SIZE);
+
+        var syncInterval = config().getLong(Constants.CONFIG_POLLING_SYNC_INTERVAL_MS, Constants.DEFAULT_POLLING_SYNC_INTERVAL_MS);
+
+        maxInFlight = config().getInteger(Constants.CONFIG_POLLING_MAX_IN_FLIGHT, Constants.DEFAULT_POLLING_MAX_IN_FLIGHT);
+
+        batchTimeout = config().getLong(Constants.CONFIG_POLLING_BATCH_TIMEOUT_MS, Constants.DEFAULT_POLLING_BATCH_TIMEOUT_MS);
+
+        var nodeId = config().getString(Constants.CONFIG_NODE_ID, UUID.randomUUID().toString());
+
+        var leaseTtl = config().getInteger(Constants.CONFIG_POLLING_LEASE_TTL_MS, Constants.DEFAULT_POLLING_LEASE_TTL_MS);
+
+        leaseManager = new JobLeaseManager(vertx, nodeId, leaseTtl);
+
+        startedAt = System.currentTimeMillis();
+
+        vertx.eventBus().consumer(Constants.EVENTBUS_POLLING_STATS_ADDRESS, message -> message.reply(getStats()));
+
+        vertx.eventBus().<String>consumer(Constants.EVENTBUS_POLLING_PROCESSOR_HEARTBEAT_ADDRESS, message -> onProcessorHeartbeat(message.body()));
+
+        vertx.eventBus().<String>consumer(Constants.EVENTBUS_POLLING_PROCESSOR_LEAVE_ADDRESS, message -> removeProcessor(message.body()));
+
+        vertx.setPeriodic(Constants.POLLING_PROCESSOR_HEARTBEAT_MS, id -> expireProcessors());
+
+        // Processors deployed before this scheduler answer right away instead of at their next heartbeat
+        vertx.eventBus().publish(Constants.EVENTBUS_POLLING_PROCESSOR_DISCOVER_ADDRESS, leaseManager.getNodeId());
+
+        vertx.setPeriodic(TICK_MS, id -> tick());
+
+        renewLeases();
+
+        vertx.setPeriodic(leaseTtl / 3, id -> renewLeases());
+
+        vertx.setPeriodic(syncInterval, id -> syncSchedule());
 
         startPromise.complete();
     }
 
-    private void runPollingScheduler()
+    // A changed lease set is synced right away, so buckets taken over from a dead node are
+    // scheduled (with jitter inside their interval) well within one polling interval
+    private void renewLeases()
+    {
+        leaseManager.renew()
+                .onSuccess(changed ->
+                {
+                    if (changed)
+                    {
+                        syncSchedule();
+                    }
+                })
+                .onFailure(err -> logger.error("Lease renewal failed: {}", err.getMessage()));
+    }
+
+    private void onProcessorHeartbeat(String address)
     {
-        logger.info("Polling cycle started");
+        if (processors.put(address, System.currentTimeMillis()) == null)
+        {
+            var previousOwners = new HashMap<Integer, String>();
+
+            if (!processorRing.isEmpty())
+            {
+                timerWheel.forEachJob(jobId -> previousOwners.put(jobId, processorRing.owner(jobId)));
+            }
+
+            processorRing.add(address);
 
-        fetchBatch(0);
+            releaseMovedJobs(previousOwners);
+
+            logger.info("Polling processor {} joined, {} processors live", address, processors.size());
+
+            dispatchPending();
+        }
     }
 
-    private void fetchBatch(int offset)
+    // A processor that lost jobs to the one that joined drops their alert state
+    private void releaseMovedJobs(HashMap<Integer, String> previousOwners)
     {
-        var params = new JsonArray().add(BATCH_SIZE).add(offset);
+        var released = new HashMap<String, JsonArray>();
+
+        previousOwners.forEach((jobId, previousOwner) ->
+        {
+            if (!processorRing.owner(jobId).equals(previousOwner))
+            {
+                released.computeIfAbsent(previousOwner, owner -> new JsonArray()).add(jobId);
+            }
+        });
 
+        released.forEach((owner, ids) -> vertx.eventBus().send(owner + Constants.POLLING_PROCESSOR_RELEASE_SUFFIX, ids));
+    }
+
+    private void removeProcessor(String address)
+    {
+        if (processors.remove(address) != null)
+        {
+            processorRing.remove(address);
+
+            logger.info("Polling processor {} left, {} processors live", address, processors.size());
+        }
+
+        // Nothing will answer for the shards it held, so their credits come back now
+        var shards = outstandingShards.remove(address);
+
+        if (shards != null)
+        {
+            shards.values().forEach(promise -> promise.tryFail("Polling processor " + address + " left"));
+        }
+    }
+
+    private void expireProcessors()
+    {
+        var deadline = System.currentTimeMillis() - 3 * Constants.POLLING_PROCESSOR_HEARTBEAT_MS;
+
+        var expired = new ArrayList<String>();
+
+        processors.forEach((address, lastSeen) ->
+        {
+            if (lastSeen < deadline)
+            {
+                expired.add(address);
+            }
+        });
+
+        expired.forEach(this::removeProcessor);
+    }
+
+    private void tick()
+    {
+        var now = System.currentTimeMillis();
+
+        timerWheel.advance((now - startedAt) / TICK_MS, jobId ->
+        {
+            if (queuedJobs.add(jobId))
+            {
+                dueJobs.add(new DueJob(jobId, now));
+            }
+            else
+            {
+                // Previous poll of this job has not even been dispatched yet
+                skippedPolls++;
+            }
+        });
+
+        dispatchPending();
+    }
+
+    // Credit based flow control: a batch is only taken off the queue while fewer than
+    // maxInFlight batches are being fetched or processed, and each completion frees one credit.
+    // Due jobs also wait while no processor is known, rather than failing their batch
+    private void dispatchPending()
+    {
+        while (inFlight < maxInFlight && !dueJobs.isEmpty() && !processorRing.isEmpty())
+        {
+            var now = System.currentTimeMillis();
+
+            var ids = new JsonArray();
+
+            while (!dueJobs.isEmpty() && ids.size() < batchSize)
+            {
+                var dueJob = dueJobs.poll();
+
+                queuedJobs.remove(dueJob.jobId());
+
+                var waitMs = now - dueJob.dueAt();
+
+                dispatchedJobs++;
+
+                totalWaitMs += waitMs;
+
+                maxWaitMs = Math.max(maxWaitMs, waitMs);
+
+                ids.add(dueJob.jobId());
+            }
+
+            inFlight++;
+
+            dispatchedBatches++;
+
+            dispatchBatch(ids).onComplete(result ->
+            {
+                if (result.failed())
+                {
+                    logger.error("Polling batch failed: {}", result.cause().getMessage());
+                }
+
+                inFlight--;
+
+                dispatchPending();
+            });
+        }
+    }
+
+    private JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("node_id", leaseManager.getNodeId())
+                .put("leased_buckets", leaseManager.getOwnedBucketCount())
+                .put("scheduled_jobs", timerWheel.size())
+                .put("queue_depth", dueJobs.size())
+                .put("in_flight", inFlight)
+                .put("max_in_flight", maxInFlight)
+                .put("processors", processors.size())
+                .put("dispatched_batches", dispatchedBatches)
+                .put("skipped_polls", skippedPolls)
+                .put("avg_wait_ms", dispatchedJobs == 0 ? 0 : totalWaitMs / dispatchedJobs)
+                .put("max_wait_ms", maxWaitMs);
+    }
+
+    // Reconciles the wheel with provisioning_jobs: new jobs are added with a random first delay
+    // inside their interval so polls spread evenly, changed intervals are picked up and removed
+    // jobs are cancelled
+    private void syncSchedule()
+    {
+        if (syncInProgress)
+        {
+            return;
+        }
+
+        syncInProgress = true;
+
+        fetchSchedule(0, new HashSet<>());
+    }
+
+    // Keyset pagination: each batch resumes after the last job id seen, so the cost per batch
+    // stays constant no matter how deep into provisioning_jobs the sync is
+    private void fetchSchedule(int lastJobId, Set<Integer> seenJobs)
+    {
         var request = new JsonObject()
-                .put(Constants.QUERY, QUERY_FETCH_JOBS)
-                .put(Constants.PARAMS, params);
+                .put(Constants.QUERY, QUERY_FETCH_SCHEDULE)
+                .put(Constants.PARAMS, new JsonArray().add(lastJobId).add(batchSize).add(leaseManager.getNodeId()));
 
         vertx.eventBus().request(Constants.EVENTBUS_DATABASE_ADDRESS, request, reply ->
         {
-            if (reply.succeeded())
+            if (reply.failed())
+            {
+                logger.error("DB call failed: {}", reply.cause().getMessage());
+
+                syncInProgress = false;
+
+                return;
+            }
+
+            var response = (JsonObject) reply.result().body();
+
+            if (!response.getBoolean(Constants.SUCCESS))
+            {
+                logger.error("DB query failed: {}", response.getString(Constants.ERROR));
+
+                syncInProgress = false;
+
+                return;
+            }
+
+            var data = response.getJsonArray(Constants.DATA);
+
+            for (int i = 0; i < data.size(); i++)
             {
-                var response = (JsonObject) reply.result().body();
+                var job = data.getJsonObject(i);
+
+                var jobId = job.getInteger(Constants.ID);
 
-                if (response.getBoolean(Constants.SUCCESS))
+                var interval = Math.max(1, job.getInteger(Constants.POLLING_INTERVAL, Constants.DEFAULT_POLLING_INTERVAL_SECONDS));
+
+                seenJobs.add(jobId);
+
+                if (timerWheel.contains(jobId))
                 {
-                    var data = response.getJsonArray(Constants.DATA);
+                    timerWheel.updateInterval(jobId, interval);
+                }
+                else
+                {
+                    latestSamples.track(jobId);
+
+                    timerWheel.schedule(jobId, interval, 1 + ThreadLocalRandom.current().nextInt(interval));
+                }
+            }
+
+            if (data.size() == batchSize)
+            {
+                fetchSchedule(data.getJsonObject(data.size() - 1).getInteger(Constants.ID), seenJobs);
+
+                return;
+            }
+
+            removeStaleJobs(seenJobs);
+
+            syncInProgress = false;
+
+            logger.info("Polling schedule synced, {} jobs scheduled", timerWheel.size());
+        });
+    }
+
+    private void removeStaleJobs(Set<Integer> seenJobs)
+    {
+        var staleJobs = new ArrayList<Integer>();
+
+        timerWheel.forEachJob(jobId ->
+        {
+            if (!seenJobs.contains(jobId))
+            {
+                staleJobs.add(jobId);
+            }
+        });
+
+        // Deleted, or leased to another node now, which then serves its latest sample and evaluates its alerts
+        staleJobs.forEach(jobId ->
+        {
+            timerWheel.cancel(jobId);
+
+            latestSamples.remove(jobId);
+        });
+
+        if (!staleJobs.isEmpty())
+        {
+            vertx.eventBus().publish(Constants.EVENTBUS_POLLING_JOBS_DROPPED_ADDRESS, new JsonArray(staleJobs));
+        }
+    }
+
+    private Future<Void> dispatchBatch(JsonArray ids)
+    {
+        // $1 is the node id, so the job id placeholders start at $2
+        var params = new JsonArray().add(leaseManager.getNodeId());
+
+        var placeholders = new StringBuilder();
+
+        for (int i = 0; i < ids.size(); i++)
+        {
+            params.add(ids.getValue(i));
+
+            placeholders.append(i == 0 ? "$" : ", $").append(i + 2);
+        }
+
+        var request = new JsonObject()
+                .put(Constants.QUERY, QUERY_FETCH_JOBS.formatted(placeholders))
+                .put(Constants.PARAMS, params);
+
+        return vertx.eventBus().<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, request)
+                .compose(reply ->
+                {
+                    var response = reply.body();
 
-                    if (!data.isEmpty())
+                    if (!response.getBoolean(Constants.SUCCESS))
                     {
-                        logger.info("Sending batch of size {}", data.size() + " to PollingProcessor");
+                        return Future.failedFuture("DB query failed: " + response.getString(Constants.ERROR));
+                    }
 
-                        logger.info(data.toString());
+                    var data = response.getJsonArray(Constants.DATA);
 
-                        vertx.eventBus().send(Constants.EVENTBUS_POLLING_PROCESSOR_ADDRESS, data);
+                    if (data.isEmpty())
+                    {
+                        return Future.succeededFuture();
+                    }
 
-                        fetchBatch(offset + BATCH_SIZE);
+                    if (processorRing.isEmpty())
+                    {
+                        return Future.failedFuture("No polling processor available");
                     }
-                    else
+
+                    // Split by owner so a device is always polled by the same processor
+                    var shards = new HashMap<String, JsonArray>();
+
+                    for (int i = 0; i < data.size(); i++)
                     {
-                        logger.info("All provisioning jobs are processed");
+                        var job = data.getJsonObject(i);
+
+                        shards.computeIfAbsent(processorRing.owner(job.getInteger(Constants.ID)), address -> new JsonArray()).add(job);
                     }
-                }
-                else
-                {
-                    logger.error("DB query failed: {}" , response.getString(Constants.ERROR));
-                }
+
+                    var replies = new ArrayList<Future<Void>>();
+
+                    // Each processor replies once its share is polled; the credit returns when all have
+                    shards.forEach((address, shard) -> replies.add(sendShard(address, shard)));
+
+                    return Future.join(replies).mapEmpty();
+                });
+    }
+
+    // Completes once the processor has replied for the shard, confirmed cancelling it, or gone away.
+    // A send timeout alone does not complete it, since the shard may still be queued on the processor
+    private Future<Void> sendShard(String address, JsonArray shard)
+    {
+        // Qualified by node, since a processor may take batches from the schedulers of several nodes
+        var shardId = leaseManager.getNodeId() + "-" + ++nextShardId;
+
+        var promise = Promise.<Void>promise();
+
+        outstandingShards.computeIfAbsent(address, key -> new HashMap<>()).put(shardId, promise);
+
+        logger.info("Sending batch of size {} to {}", shard.size(), address);
+
+        var deliveryOptions = new DeliveryOptions()
+                .setSendTimeout(batchTimeout)
+                .addHeader(Constants.BATCH_ID, shardId);
+
+        vertx.eventBus().request(address, shard, deliveryOptions).onComplete(reply ->
+        {
+            if (reply.failed() && isTimeout(reply.cause()))
+            {
+                logger.warn("Batch {} on {} got no reply within {} ms, cancelling it", shardId, address, batchTimeout);
+
+                cancelShard(address, shardId);
+
+                return;
             }
-            else
+
+            settleShard(address, shardId, reply.failed() ? reply.cause() : null);
+        });
+
+        return promise.future();
+    }
+
+    private void cancelShard(String address, String shardId)
+    {
+        var shards = outstandingShards.get(address);
+
+        if (shards == null || !shards.containsKey(shardId))
+        {
+            return;
+        }
+
+        var deliveryOptions = new DeliveryOptions().setSendTimeout(batchTimeout);
+
+        vertx.eventBus().request(address + Constants.POLLING_PROCESSOR_CANCEL_SUFFIX, shardId, deliveryOptions).onComplete(reply ->
+        {
+            if (reply.failed() && isTimeout(reply.cause()))
             {
-                logger.error("DB call failed: {}" ,reply.cause().getMessage());
+                // Still heartbeating but not done yet; the credit stays taken until it is
+                cancelShard(address, shardId);
+
+                return;
             }
+
+            settleShard(address, shardId, new IllegalStateException("Batch " + shardId + " timed out on " + address));
         });
     }
-}
 
+    private void settleShard(String address, String shardId, Throwable failure)
+    {
+        var shards = outstandingShards.get(address);
+
+        var promise = shards == null ? null : shards.remove(shardId);
+
+        if (promise == null)
+        {
+            return;
+        }
+
+        if (shards.isEmpty())
+        {
+            outstandingShards.remove(address);
+        }
+
+        if (failure == null)
+        {
+            promise.complete();
+        }
+        else
+        {
+            promise.fail(failure);
+        }
+    }
+
+    private static boolean isTimeout(Throwable failure)
+    {
+        return failure instanceof ReplyException exception && exception.failureType() == ReplyFailure.TIMEOUT;
+    }
+}
@@ -0,0 +1,247 @@
+package org.example.polling;
+
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+
+/*
+ * Hierarchical timer wheel keyed by provisioning job id.
+ *
+ * Four levels of 64 slots each: level 0 covers the next 64 ticks one tick per slot, level 1 the
+ * next 64^2 ticks 64 ticks per slot, and so on. An entry lives in exactly one slot as a node of an
+ * intrusive doubly linked list, so schedule, cancel and expiry are O(1) and the memory cost is one
+ * small node per job. When level 0 wraps, the matching slot of the level above is cascaded down.
+ */
+class TimerWheel
+{
+    private static final int LEVELS = 4;
+
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private static final class Node
+    {
+        final int jobId;
+
+        int intervalTicks;
+
+        long deadline;
+
+        int level;
+
+        int slot;
+
+        Node prev;
+
+        Node next;
+
+        Node(int jobId, int intervalTicks)
+        {
+            this.jobId = jobId;
+
+            this.intervalTicks = intervalTicks;
+        }
+    }
+
+    private final Node[][] wheel = new Node[LEVELS][SLOTS];
+
+    private final HashMap<Integer, Node> nodes = new HashMap<>();
+
+    private long currentTick;
+
+    long getCurrentTick()
+    {
+        return currentTick;
+    }
+
+    int size()
+    {
+        return nodes.size();
+    }
+
+    boolean contains(int jobId)
+    {
+        return nodes.containsKey(jobId);
+    }
+
+    void forEachJob(IntConsumer consumer)
+    {
+        nodes.keySet().forEach(consumer::accept);
+    }
+
+    // Adds a job or moves an existing one so that it fires delayTicks from now
+    void schedule(int jobId, int intervalTicks, long delayTicks)
+    {
+        var node = nodes.get(jobId);
+
+        if (node == null)
+        {
+            node = new Node(jobId, intervalTicks);
+
+            nodes.put(jobId, node);
+        }
+        else
+        {
+            unlink(node);
+
+            node.intervalTicks = intervalTicks;
+        }
+
+        node.deadline = currentTick + Math.max(1, Math.min(delayTicks, MAX_DELAY));
+
+        link(node);
+    }
+
+    // Changes the interval and re-arms the pending deadline at one new interval after the job last
+    // fired, so shortening an hourly poll to a minute takes effect now rather than after the hour
+    void updateInterval(int jobId, int intervalTicks)
+    {
+        var node = nodes.get(jobId);
+
+        if (node == null || node.intervalTicks == intervalTicks)
+        {
+            return;
+        }
+
+        var lastFired = node.deadline - node.intervalTicks;
+
+        unlink(node);
+
+        node.intervalTicks = intervalTicks;
+
+        node.deadline = Math.max(currentTick + 1, lastFired + Math.min(intervalTicks, MAX_DELAY));
+
+        link(node);
+    }
+
+    void cancel(int jobId)
+    {
+        var node = nodes.remove(jobId);
+
+        if (node != null)
+        {
+            unlink(node);
+        }
+    }
+
+    // Advances the wheel up to and including targetTick. Every expired job is handed to the
+    // consumer and rescheduled one interval after the tick it fired on
+    void advance(long targetTick, IntConsumer onExpired)
+    {
+        while (currentTick < targetTick)
+        {
+            currentTick++;
+
+            cascade();
+
+            var slot = (int) (currentTick & SLOT_MASK);
+
+            var node = wheel[0][slot];
+
+            wheel[0][slot] = null;
+
+            while (node != null)
+            {
+                var next = node.next;
+
+                node.prev = null;
+
+                node.next = null;
+
+                if (node.deadline <= currentTick)
+                {
+                    onExpired.accept(node.jobId);
+
+                    node.deadline = currentTick + node.intervalTicks;
+                }
+
+                link(node);
+
+                node = next;
+            }
+        }
+    }
+
+    private void cascade()
+    {
+        for (int level = 1; level < LEVELS; level++)
+        {
+            // Level N only turns over when every level below it has wrapped
+            if (((currentTick >> (SLOT_BITS * (level - 1))) & SLOT_MASK) != 0)
+            {
+                return;
+            }
+
+            var slot = (int) ((currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+
+            var node = wheel[level][slot];
+
+            wheel[level][slot] = null;
+
+            while (node != null)
+            {
+                var next = node.next;
+
+                node.prev = null;
+
+                node.next = null;
+
+                link(node);
+
+                node = next;
+            }
+        }
+    }
+
+    private void link(Node node)
+    {
+        var delay = Math.max(0, node.deadline - currentTick);
+
+        var level = 0;
+
+        while (level < LEVELS - 1 && delay >= (1L << (SLOT_BITS * (level + 1))))
+        {
+            level++;
+        }
+
+        var slot = (int) ((node.deadline >> (SLOT_BITS * level)) & SLOT_MASK);
+
+        node.level = level;
+
+        node.slot = slot;
+
+        node.next = wheel[level][slot];
+
+        if (node.next != null)
+        {
+            node.next.prev = node;
+        }
+
+        wheel[level][slot] = node;
+    }
+
+    private void unlink(Node node)
+    {
+        if (node.prev != null)
+        {
+            node.prev.next = node.next;
+        }
+        else if (wheel[node.level][node.slot] == node)
+        {
+            wheel[node.level][node.slot] = node.next;
+        }
+
+        if (node.next != null)
+        {
+            node.next.prev = node.prev;
+        }
+
+        node.prev = null;
+
+        node.next = null;
+    }
+}
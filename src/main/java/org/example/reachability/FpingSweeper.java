@@ -0,0 +1,177 @@
+package org.example.reachability;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Reachability through the fping binary, for hosts where raw ICMP is wanted but the JVM cannot
+ * send it. A batch is split into shards that run as separate fping processes on a dedicated
+ * worker pool of maxProcesses threads. Replies are read from fping's per-reply stdout lines as
+ * they arrive rather than from the -q summary, which fping only writes when it exits on its own.
+ * Each shard is killed after a timeout sized to its length and keeps the addresses that replied
+ * until then, so one slow shard no longer costs the whole batch.
+ * Alive addresses are mapped back to every device with that address, so devices sharing an IP
+ * are all reported.
+ */
+class FpingSweeper
+{
+    private static final Logger logger = LoggerFactory.getLogger(FpingSweeper.class);
+
+    private static final int PING_COUNT = 3;
+
+    private static final int PING_TIMEOUT_MS = 500;
+
+    private static final int PING_PERIOD_MS = 50;
+
+    // fping's default minimum gap between packets to different targets
+    private static final int PING_INTERVAL_MS = 10;
+
+    private static final int MAX_SHARD_SIZE = 512;
+
+    private static final long SHARD_TIMEOUT_SLACK_MS = 1_000;
+
+    private final Vertx vertx;
+
+    private final WorkerExecutor executor;
+
+    private final int shards;
+
+    FpingSweeper(Vertx vertx, JsonObject config)
+    {
+        this.vertx = vertx;
+
+        this.shards = Math.max(1, config.getInteger(Constants.CONFIG_REACHABILITY_FPING_SHARDS, Runtime.getRuntime().availableProcessors()));
+
+        var maxProcesses = Math.max(1, config.getInteger(Constants.CONFIG_REACHABILITY_FPING_MAX_PROCESSES, shards));
+
+        this.executor = vertx.createSharedWorkerExecutor("fping", maxProcesses);
+    }
+
+    // Completes with the reachable devices, in input order
+    Future<JsonArray> filterReachable(JsonArray devices)
+    {
+        var ips = new ArrayList<String>();
+
+        var seen = new HashSet<String>();
+
+        for (int i = 0; i < devices.size(); i++)
+        {
+            var ip = devices.getJsonObject(i).getString(Constants.IP);
+
+            if (ip != null && seen.add(ip))
+            {
+                ips.add(ip);
+            }
+        }
+
+        if (ips.isEmpty())
+        {
+            return Future.succeededFuture(new JsonArray());
+        }
+
+        var shardCount = Math.min(ips.size(), Math.max(shards, (ips.size() + MAX_SHARD_SIZE - 1) / MAX_SHARD_SIZE));
+
+        var shardSize = (ips.size() + shardCount - 1) / shardCount;
+
+        var runs = new ArrayList<Future<Set<String>>>();
+
+        for (int from = 0; from < ips.size(); from += shardSize)
+        {
+            var shard = ips.subList(from, Math.min(ips.size(), from + shardSize));
+
+            runs.add(executor.executeBlocking(() -> ping(shard), false)
+                    .otherwise(err ->
+                    {
+                        logger.error("fping shard of {} addresses failed: {}", shard.size(), err.getMessage());
+
+                        return Set.of();
+                    }));
+        }
+
+        return Future.join(runs).map(v ->
+        {
+            var alive = new HashSet<String>();
+
+            runs.forEach(run -> alive.addAll(run.result()));
+
+            var reachable = new JsonArray();
+
+            for (int i = 0; i < devices.size(); i++)
+            {
+                if (alive.contains(devices.getJsonObject(i).getString(Constants.IP)))
+                {
+                    reachable.add(devices.getJsonObject(i));
+                }
+            }
+
+            return reachable;
+        });
+    }
+
+    // fping cycles through all targets every round, so a shard takes about PING_COUNT rounds of its length
+    static long shardTimeout(int shardSize)
+    {
+        return (long) PING_COUNT * Math.max(PING_PERIOD_MS, shardSize * PING_INTERVAL_MS) + PING_TIMEOUT_MS + SHARD_TIMEOUT_SLACK_MS;
+    }
+
+    private Set<String> ping(List<String> shard) throws Exception
+    {
+        var command = new ArrayList<String>(List.of("fping", "-c", String.valueOf(PING_COUNT),
+                "-t", String.valueOf(PING_TIMEOUT_MS), "-p", String.valueOf(PING_PERIOD_MS)));
+
+        command.addAll(shard);
+
+        var process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+
+        // Killing the process closes stdout, which ends the read loop with the replies seen so far
+        var timerId = vertx.setTimer(shardTimeout(shard.size()), id ->
+        {
+            logger.warn("fping shard of {} addresses timed out, keeping partial results", shard.size());
+
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+
+            process.destroyForcibly();
+        });
+
+        var alive = new HashSet<String>();
+
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream())))
+        {
+            String line;
+
+            // fping -c prints a stdout line per reply and nothing for a lost probe, e.g.
+            // "192.168.1.1 : [0], 64 bytes, 1.23 ms (1.23 avg, 0% loss)"; the summary goes to stderr
+            while ((line = reader.readLine()) != null)
+            {
+                var separator = line.indexOf(" : [");
+
+                if (separator > 0 && line.contains(" bytes, "))
+                {
+                    alive.add(line.substring(0, separator).trim());
+                }
+            }
+        }
+        finally
+        {
+            vertx.cancelTimer(timerId);
+
+            process.destroy();
+        }
+
+        return alive;
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.reachability;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.net.InetAddress;
+
+/*
+ * ICMP echo through InetAddress.isReachable. The JDK only sends real ICMP when the process may
+ * open raw sockets (otherwise it falls back to a TCP echo on port 7), and the call blocks, so it
+ * runs on worker threads and its throughput is bounded by the worker pool size.
+ */
+class IcmpProbe implements ReachabilityProbe
+{
+    private final Vertx vertx;
+
+    private final int timeout;
+
+    IcmpProbe(Vertx vertx, int timeout)
+    {
+        this.vertx = vertx;
+
+        this.timeout = timeout;
+    }
+
+    @Override
+    public Future<Boolean> probe(String ip, int port)
+    {
+        return vertx.executeBlocking(() -> InetAddress.getByName(ip).isReachable(timeout), false)
+                .otherwise(false);
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.reachability;
+
+import io.vertx.core.json.JsonArray;
+import org.example.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Expands sweep targets into IPv4 addresses. Accepted forms:
+ *   "10.0.0.0/24"             CIDR block; network and broadcast addresses are skipped below /31
+ *   "10.0.0.10-10.0.0.200"    inclusive start-end range
+ *   "10.0.0.7"                single address
+ */
+public final class IpRanges
+{
+    private IpRanges()
+    {
+    }
+
+    // Throws IllegalArgumentException on malformed targets or when more than maxHosts addresses result
+    public static List<String> expand(JsonArray targets, int maxHosts)
+    {
+        var hosts = new ArrayList<String>();
+
+        for (var target : targets)
+        {
+            var text = String.valueOf(target).trim();
+
+            long first;
+
+            long last;
+
+            if (text.contains("/"))
+            {
+                var parts = text.split("/", 2);
+
+                var prefix = parsePrefix(parts[1], text);
+
+                var size = 1L << (32 - prefix);
+
+                first = toLong(parts[0], text) & ~(size - 1);
+
+                last = first + size - 1;
+
+                if (prefix < 31)
+                {
+                    first++;
+
+                    last--;
+                }
+            }
+            else if (text.contains("-"))
+            {
+                var parts = text.split("-", 2);
+
+                first = toLong(parts[0].trim(), text);
+
+                last = toLong(parts[1].trim(), text);
+            }
+            else
+            {
+                first = last = toLong(text, text);
+            }
+
+            if (last < first)
+            {
+                throw new IllegalArgumentException("Empty address range: " + text);
+            }
+
+            if (hosts.size() + (last - first + 1) > maxHosts)
+            {
+                throw new IllegalArgumentException("Sweep exceeds the limit of " + maxHosts + " hosts");
+            }
+
+            for (var address = first; address <= last; address++)
+            {
+                hosts.add(toIp(address));
+            }
+        }
+
+        return hosts;
+    }
+
+    private static int parsePrefix(String value, String target)
+    {
+        try
+        {
+            var prefix = Integer.parseInt(value.trim());
+
+            if (prefix >= 0 && prefix <= 32)
+            {
+                return prefix;
+            }
+        }
+        catch (NumberFormatException ignored)
+        {
+            // reported below
+        }
+
+        throw new IllegalArgumentException("Invalid CIDR prefix: " + target);
+    }
+
+    private static long toLong(String ip, String target)
+    {
+        if (!Utils.isValidIPv4(ip))
+        {
+            throw new IllegalArgumentException("Invalid IPv4 address in " + target);
+        }
+
+        var address = 0L;
+
+        for (var octet : ip.split("\\."))
+        {
+            address = (address << 8) | Integer.parseInt(octet);
+        }
+
+        return address;
+    }
+
+    private static String toIp(long address)
+    {
+        return ((address >> 24) & 0xFF) + "." + ((address >> 16) & 0xFF) + "." + ((address >> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
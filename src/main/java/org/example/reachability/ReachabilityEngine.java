@@ -0,0 +1,247 @@
+package org.example.reachability;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * In-process reachability check for discovery.
+ *
+ * Every device is probed with the configured probes in order ("tcp" connect to the device port,
+ * "icmp" echo) and counts as reachable on the first probe that answers. At most `concurrency`
+ * devices are in flight at once; each finished probe starts the next device, so large batches
+ * run as a sliding window on the caller's event loop without blocking or forking anything.
+ * Each probe gives up after its own timeout. A sweep can also be capped to a number of probe
+ * starts per second, for scans of whole address ranges.
+ *
+ * With "fping" as the only probe, batches go to FpingSweeper instead (sharded fping processes).
+ * fping paces its own packets, so sweeps through it ignore the concurrency and rate settings and
+ * report responsive hosts per batch rather than one by one.
+ */
+public class ReachabilityEngine
+{
+    private final Vertx vertx;
+
+    private final List<ReachabilityProbe> probes = new ArrayList<>();
+
+    private final int concurrency;
+
+    private FpingSweeper fping;
+
+    public ReachabilityEngine(Vertx vertx, JsonObject config)
+    {
+        this.vertx = vertx;
+
+        var timeout = config.getInteger(Constants.CONFIG_REACHABILITY_TIMEOUT_MS, Constants.DEFAULT_REACHABILITY_TIMEOUT_MS);
+
+        concurrency = config.getInteger(Constants.CONFIG_REACHABILITY_CONCURRENCY, Constants.DEFAULT_REACHABILITY_CONCURRENCY);
+
+        var names = config.getJsonArray(Constants.CONFIG_REACHABILITY_PROBES, new JsonArray().add(Constants.PROBE_TCP));
+
+        if (names.size() == 1 && Constants.PROBE_FPING.equals(names.getValue(0)))
+        {
+            fping = new FpingSweeper(vertx, config);
+
+            return;
+        }
+
+        for (var name : names)
+        {
+            probes.add(switch (String.valueOf(name))
+            {
+                case Constants.PROBE_TCP -> new TcpConnectProbe(vertx, timeout);
+
+                case Constants.PROBE_ICMP -> new IcmpProbe(vertx, timeout);
+
+                default -> throw new IllegalArgumentException("Unknown reachability probe: " + name);
+            });
+        }
+    }
+
+    // Completes with the reachable devices, in input order
+    public Future<JsonArray> filterReachable(JsonArray devices)
+    {
+        if (fping != null)
+        {
+            return fping.filterReachable(devices);
+        }
+
+        var reachable = new boolean[devices.size()];
+
+        return sweep(devices, concurrency, 0, (index, device) -> reachable[index] = true)
+                .map(v ->
+                {
+                    var alive = new JsonArray();
+
+                    for (int i = 0; i < reachable.length; i++)
+                    {
+                        if (reachable[i])
+                        {
+                            alive.add(devices.getJsonObject(i));
+                        }
+                    }
+
+                    return alive;
+                });
+    }
+
+    // Hands each reachable device to the handler as soon as it answers; completes once every device was probed
+    public Future<Void> sweep(JsonArray devices, int concurrency, int ratePerSecond, Handler<JsonObject> reachableHandler)
+    {
+        if (fping != null)
+        {
+            return fping.filterReachable(devices)
+                    .onSuccess(alive -> alive.forEach(device -> reachableHandler.handle((JsonObject) device)))
+                    .mapEmpty();
+        }
+
+        return sweep(devices, concurrency, ratePerSecond, (index, device) -> reachableHandler.handle(device));
+    }
+
+    private Future<Void> sweep(JsonArray devices, int concurrency, int ratePerSecond, ReachableHandler reachableHandler)
+    {
+        if (devices.isEmpty())
+        {
+            return Future.succeededFuture();
+        }
+
+        return new Sweep(devices, Math.max(1, concurrency), Math.max(0, ratePerSecond), reachableHandler).run();
+    }
+
+    private Future<Boolean> probe(String ip, int port, int probeIndex)
+    {
+        return probes.get(probeIndex).probe(ip, port)
+                .compose(alive -> alive || probeIndex + 1 == probes.size()
+                        ? Future.succeededFuture(alive)
+                        : probe(ip, port, probeIndex + 1));
+    }
+
+    private interface ReachableHandler
+    {
+        void reachable(int index, JsonObject device);
+    }
+
+    // One sweep: a sliding window of at most `concurrency` devices being probed, optionally rate limited
+    private class Sweep
+    {
+        private final JsonArray devices;
+
+        private final int concurrency;
+
+        private final int ratePerSecond;
+
+        private final ReachableHandler reachableHandler;
+
+        private final Promise<Void> promise = Promise.promise();
+
+        private final long startedAt = System.nanoTime();
+
+        private int next;
+
+        private int inFlight;
+
+        private int finished;
+
+        private boolean pumping;
+
+        private long rateTimerId = -1;
+
+        Sweep(JsonArray devices, int concurrency, int ratePerSecond, ReachableHandler reachableHandler)
+        {
+            this.devices = devices;
+
+            this.concurrency = concurrency;
+
+            this.ratePerSecond = ratePerSecond;
+
+            this.reachableHandler = reachableHandler;
+        }
+
+        Future<Void> run()
+        {
+            pump();
+
+            return promise.future();
+        }
+
+        // Probes that complete synchronously re-enter here; the guard keeps that a loop instead of recursion
+        private void pump()
+        {
+            if (pumping || rateTimerId != -1)
+            {
+                return;
+            }
+
+            pumping = true;
+
+            while (inFlight < concurrency && next < devices.size())
+            {
+                if (ratePerSecond > 0 && next >= allowedStarts())
+                {
+                    // Wait for the next start the rate allows
+                    var delay = Math.max(1, 1_000 / ratePerSecond);
+
+                    rateTimerId = vertx.setTimer(delay, id ->
+                    {
+                        rateTimerId = -1;
+
+                        pump();
+                    });
+
+                    break;
+                }
+
+                start(next++);
+            }
+
+            pumping = false;
+        }
+
+        // Token bucket: a tenth of a second of burst, refilled at ratePerSecond
+        private long allowedStarts()
+        {
+            var burst = Math.max(1, ratePerSecond / 10);
+
+            return burst + (System.nanoTime() - startedAt) * ratePerSecond / 1_000_000_000L;
+        }
+
+        private void start(int index)
+        {
+            var device = devices.getJsonObject(index);
+
+            var ip = device.getString(Constants.IP);
+
+            inFlight++;
+
+            var result = ip == null
+                    ? Future.succeededFuture(false)
+                    : probe(ip, device.getInteger(Constants.PORT, Constants.DEFAULT_SSH_PORT), 0);
+
+            result.onComplete(probed ->
+            {
+                inFlight--;
+
+                if (probed.succeeded() && probed.result())
+                {
+                    reachableHandler.reachable(index, device);
+                }
+
+                if (++finished == devices.size())
+                {
+                    promise.complete();
+                }
+                else
+                {
+                    pump();
+                }
+            });
+        }
+    }
+}
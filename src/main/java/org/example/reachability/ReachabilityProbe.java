@@ -0,0 +1,9 @@
+package org.example.reachability;
+
+import io.vertx.core.Future;
+
+// One way of telling whether a device answers; completes with false rather than failing
+public interface ReachabilityProbe
+{
+    Future<Boolean> probe(String ip, int port);
+}
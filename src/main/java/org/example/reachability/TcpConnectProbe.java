@@ -0,0 +1,30 @@
+package org.example.reachability;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+
+// Reachable when a TCP connection to the device port (SSH by default) is accepted within the timeout
+class TcpConnectProbe implements ReachabilityProbe
+{
+    private final NetClient client;
+
+    TcpConnectProbe(Vertx vertx, int timeout)
+    {
+        client = vertx.createNetClient(new NetClientOptions().setConnectTimeout(timeout));
+    }
+
+    @Override
+    public Future<Boolean> probe(String ip, int port)
+    {
+        return client.connect(port, ip)
+                .map(socket ->
+                {
+                    socket.close();
+
+                    return true;
+                })
+                .otherwise(false);
+    }
+}
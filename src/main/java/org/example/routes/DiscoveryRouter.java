@@ -2,13 +2,18 @@ package org.example.routes;
 
 import io.vertx.core.Vertx;
 import io.vertx.ext.web.RoutingContext;
+import org.example.service.DiscoveryService;
 import org.example.utils.Constants;
 
 public class DiscoveryRouter extends AbstractRouter
 {
+    private final DiscoveryService discoveryService;
+
     public DiscoveryRouter(Vertx vertx)
     {
         super(vertx);
+
+        discoveryService = new DiscoveryService(vertx);
     }
 
     @Override
@@ -18,6 +23,12 @@ public class DiscoveryRouter extends AbstractRouter
 
         router.post("/run").handler(this::handleRunDiscovery);
 
+        router.post("/sweep").handler(this::handleSweep);
+
+        router.get("/jobs/:jobId").handler(context -> discoveryService.getJob(context.pathParam(Constants.JOB_ID_PARAM), context));
+
+        router.get("/jobs/:jobId/events").handler(context -> discoveryService.streamJob(context.pathParam(Constants.JOB_ID_PARAM), context));
+
         router.get("/getAll").handler(dbService::getAll);
 
         router.get("/:id").handler(this::handleGetById);
@@ -37,10 +48,27 @@ public class DiscoveryRouter extends AbstractRouter
             }
             else
             {
-                dbService.runDiscovery(body.toJsonObject().getJsonArray("ids"), context);
+                // Answers 202 with the job id; progress via /jobs/:jobId and /jobs/:jobId/events
+                var request = body.toJsonObject();
+
+                discoveryService.startDiscovery(request.getJsonArray(Constants.IDS), request.getBoolean(Constants.BYPASS_CACHE, false), context);
             }
         });
     }
-}
-
 
+    private void handleSweep(RoutingContext context)
+    {
+        context.request().bodyHandler(body ->
+        {
+            if (body == null || body.length() == 0)
+            {
+                context.response().setStatusCode(400).end(Constants.MESSAGE_BODY_REQUIRED);
+            }
+            else
+            {
+                // Answers 202 with the job id, like /run
+                discoveryService.startSweep(body.toJsonObject(), context);
+            }
+        });
+    }
+}
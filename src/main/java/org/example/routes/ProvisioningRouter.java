@@ -1,14 +1,25 @@
 package org.example.routes;
 
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
+import org.example.polling.LatestSampleCache;
+import org.example.service.MetricsQueryService;
 import org.example.utils.Constants;
+import org.example.utils.Utils;
 
 public class ProvisioningRouter extends AbstractRouter
 {
-    public ProvisioningRouter(Vertx vertx)
+    private final LatestSampleCache latestSamples = LatestSampleCache.getInstance();
+
+    private final MetricsQueryService metricsService;
+
+    public ProvisioningRouter(Vertx vertx, JsonObject config)
     {
         super(vertx);
+
+        metricsService = new MetricsQueryService(vertx, config);
     }
 
     @Override
@@ -18,7 +29,26 @@ public class ProvisioningRouter extends AbstractRouter
 
         router.get("/getAll").handler(dbService::getAll);
 
-        router.delete("/:id").handler(this::handleDelete);
+        router.get("/schedulerStats").handler(context -> handleStats(Constants.EVENTBUS_POLLING_STATS_ADDRESS, context));
+
+        router.get("/ingestionStats").handler(context -> handleStats(Constants.EVENTBUS_INGESTION_STATS_ADDRESS, context));
+
+        router.get("/queryBuilderStats").handler(dbService::getQueryBuilderStats);
+
+        router.get("/dbPoolStats").handler(context -> handleStats(Constants.EVENTBUS_DB_POOL_STATS_ADDRESS, context));
+
+        // Current state comes from the in-memory latest-sample cache; only jobs polled by another node are read from the database
+        router.post("/latest").handler(this::handleGetLatestBulk);
+
+        router.get("/:id/latest").handler(this::handleGetLatest);
+
+        router.get("/:id/metrics").handler(this::handleGetMetrics);
+
+        router.get("/:id/rollups").handler(this::handleGetRollups);
+
+        router.put("/:id").handler(this::handleUpdate);
+
+        router.delete("/:id").handler(this::handleDeleteJob);
     }
 
     private void handleStartProvision(RoutingContext context)
@@ -28,8 +58,254 @@ public class ProvisioningRouter extends AbstractRouter
         if (id == null || id.isEmpty())
         {
             context.response().setStatusCode(400).end(Constants.MESSAGE_ID_REQUIRED);
-        } else {
-            dbService.addForProvision(id, context);
+
+            return;
         }
+
+        // Optional body: {"polling_interval": <seconds>}
+        context.request().bodyHandler(body ->
+        {
+            var pollingInterval = Constants.DEFAULT_POLLING_INTERVAL_SECONDS;
+
+            if (body != null && body.length() > 0)
+            {
+                Object value;
+
+                try
+                {
+                    value = body.toJsonObject().getValue(Constants.POLLING_INTERVAL);
+                }
+                catch (Exception exception)
+                {
+                    value = null;
+                }
+
+                if (!(value instanceof Integer interval) || interval <= 0)
+                {
+                    context.response().setStatusCode(400).end(Constants.MESSAGE_INCORRECT_BODY);
+
+                    return;
+                }
+
+                pollingInterval = interval;
+            }
+
+            dbService.addForProvision(id, pollingInterval, context);
+        });
+    }
+
+    private void handleGetLatest(RoutingContext context)
+    {
+        int id;
+
+        try
+        {
+            id = Integer.parseInt(context.pathParam(Constants.ID));
+        }
+        catch (NumberFormatException exception)
+        {
+            context.response().setStatusCode(400).end(Constants.MESSAGE_ID_REQUIRED);
+
+            return;
+        }
+
+        var sample = latestSamples.get(id);
+
+        if (sample != null)
+        {
+            context.json(sample);
+
+            return;
+        }
+
+        // Not polled by this node, so its last sample is read from the database
+        dbService.getLatestSamples(new JsonArray().add(id)).onComplete(ar ->
+        {
+            if (ar.failed())
+            {
+                respondLatestFailed(ar.cause(), context);
+            }
+            else if (ar.result().isEmpty())
+            {
+                context.response().setStatusCode(404).end(Constants.MESSAGE_NO_LATEST_SAMPLE);
+            }
+            else
+            {
+                context.json(ar.result().getJsonObject(0));
+            }
+        });
+    }
+
+    // POST /latest with {"ids": [1, 2, ...]}; devices without a sample yet are omitted
+    private void handleGetLatestBulk(RoutingContext context)
+    {
+        context.request().bodyHandler(body ->
+        {
+            JsonArray ids;
+
+            try
+            {
+                ids = body.toJsonObject().getJsonArray(Constants.IDS);
+            }
+            catch (Exception exception)
+            {
+                ids = null;
+            }
+
+            if (ids == null)
+            {
+                context.response().setStatusCode(400).end(Constants.MESSAGE_INCORRECT_BODY);
+
+                return;
+            }
+
+            var samples = new JsonArray();
+
+            var missing = new JsonArray();
+
+            latestSamples.getAll(ids, samples, missing);
+
+            if (missing.isEmpty())
+            {
+                context.json(samples);
+
+                return;
+            }
+
+            dbService.getLatestSamples(missing).onComplete(ar ->
+            {
+                if (ar.failed())
+                {
+                    respondLatestFailed(ar.cause(), context);
+
+                    return;
+                }
+
+                context.json(samples.addAll(ar.result()));
+            });
+        });
+    }
+
+    private void respondLatestFailed(Throwable cause, RoutingContext context)
+    {
+        context.response()
+                .setStatusCode(500)
+                .end(new JsonObject().put(Constants.ERROR, "DBService failed: " + cause.getMessage()).encodePrettily());
+    }
+
+    // The cached sample and alert state go only once the job is deleted, so a failed delete leaves them in place
+    private void handleDeleteJob(RoutingContext context)
+    {
+        var id = context.pathParam(Constants.ID);
+
+        int jobId;
+
+        try
+        {
+            jobId = Integer.parseInt(id);
+        }
+        catch (NumberFormatException exception)
+        {
+            context.response().setStatusCode(400).end(Constants.MESSAGE_ID_REQUIRED);
+
+            return;
+        }
+
+        dbService.delete(id, context, () ->
+        {
+            latestSamples.remove(jobId);
+
+            context.vertx().eventBus().publish(Constants.EVENTBUS_POLLING_JOBS_DROPPED_ADDRESS, new JsonArray().add(jobId));
+        });
+    }
+
+    // GET /:id/metrics?from=<iso>&to=<iso>[&maxPoints=<n>], streamed as a chunked JSON array;
+    // without maxPoints every raw row is returned, with it min/max buckets of at most maxPoints points per metric
+    private void handleGetMetrics(RoutingContext context)
+    {
+        int id;
+
+        int maxPoints;
+
+        try
+        {
+            id = Integer.parseInt(context.pathParam(Constants.ID));
+
+            var points = context.queryParams().get(Constants.MAX_POINTS);
+
+            maxPoints = points == null ? 0 : Integer.parseInt(points);
+        }
+        catch (NumberFormatException exception)
+        {
+            context.response().setStatusCode(400).end(Constants.MESSAGE_INCORRECT_BODY);
+
+            return;
+        }
+
+        var from = Utils.parseTimestamp(context.queryParams().get(Constants.FROM));
+
+        var to = Utils.parseTimestamp(context.queryParams().get(Constants.TO));
+
+        if (from == null || to == null || !from.isBefore(to) || maxPoints < 0)
+        {
+            context.response().setStatusCode(400).end(Constants.MESSAGE_INVALID_TIME_RANGE);
+
+            return;
+        }
+
+        metricsService.streamMetrics(id, from, to, maxPoints, context);
+    }
+
+    // GET /:id/rollups?from=<iso>&to=<iso>[&metric=<name>][&maxPoints=<n>]
+    private void handleGetRollups(RoutingContext context)
+    {
+        int id;
+
+        int maxPoints;
+
+        try
+        {
+            id = Integer.parseInt(context.pathParam(Constants.ID));
+
+            var points = context.queryParams().get(Constants.MAX_POINTS);
+
+            maxPoints = points == null ? Constants.DEFAULT_MAX_POINTS : Integer.parseInt(points);
+        }
+        catch (NumberFormatException exception)
+        {
+            context.response().setStatusCode(400).end(Constants.MESSAGE_INCORRECT_BODY);
+
+            return;
+        }
+
+        var from = Utils.parseTimestamp(context.queryParams().get(Constants.FROM));
+
+        var to = Utils.parseTimestamp(context.queryParams().get(Constants.TO));
+
+        if (from == null || to == null || !from.isBefore(to) || maxPoints <= 0)
+        {
+            context.response().setStatusCode(400).end(Constants.MESSAGE_INVALID_TIME_RANGE);
+
+            return;
+        }
+
+        dbService.getRollups(id, context.queryParams().get(Constants.METRIC), from, to, maxPoints, context);
+    }
+
+    private void handleStats(String address, RoutingContext context)
+    {
+        context.vertx().eventBus().<JsonObject>request(address, null, reply ->
+        {
+            if (reply.succeeded())
+            {
+                context.json(reply.result().body());
+            }
+            else
+            {
+                context.response()
+                        .setStatusCode(503)
+                        .end(new JsonObject().put(Constants.ERROR, "Stats unavailable: " + reply.cause().getMessage()).encodePrettily());
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -1,18 +1,22 @@
 package org.example.server;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.pgclient.PgBuilder;
-import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.sqlclient.Pool;
-import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.SqlClient;
 import io.vertx.sqlclient.Tuple;
+import org.example.service.RollupResolution;
 import org.example.utils.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,42 +26,65 @@ public class DBVerticle extends AbstractVerticle
 
     private static final String RETURNING_ID = " RETURNING id";
 
+    private static final String INSTANCE_COUNTER = "nms.db.verticle.instances";
+
+    private static final String SCHEMA_LOCK = "nms.db.schema";
+
+    private static final long SCHEMA_LOCK_TIMEOUT_MS = 120_000;
+
+    private static final String INSTANCE_SPOOL_PREFIX = "instance-";
+
     private Pool client;
 
+    private SqlClient pipelinedClient;
+
+    private long instance;
+
+    // This instance's writer, and on the first instance also those replaying orphaned spools
+    private final List<MetricsWriter> metricsWriters = new ArrayList<>();
+
     @Override
     public void start(Promise<Void> startPromise)
     {
-        var connectOptions = new PgConnectOptions()
-                .setHost(Constants.DB_HOST)
-                .setPort(Integer.parseInt(Constants.DB_PORT))
-                .setDatabase(Constants.DB_NAME)
-                .setUser(Constants.DB_USER)
-                .setPassword(Constants.DB_PASSWORD);
-
-        var poolOptions = new PoolOptions()
-                .setMaxSize(10);
-
-        client = PgBuilder.pool()
-                .with(poolOptions)
-                .connectingTo(connectOptions)
-                .using(vertx)
-                .build();
-
-        client.query(Constants.DB_CONNECTION_CHECKUP_QUERY).execute(ar ->
-        {
-            if (ar.succeeded())
-            {
-                logger.info("✅ Connected to PostgreSQL successfully!");
+        client = DatabasePool.create(vertx, config());
 
-                createTables(startPromise);
-            }
-            else
-            {
-                logger.info("❌ DB connection failed: {}" , ar.cause().getMessage());
+        pipelinedClient = DatabasePool.createPipelined(vertx, config());
 
-                startPromise.fail(ar.cause());
-            }
-        });
+        vertx.sharedData().getLocalCounter(INSTANCE_COUNTER)
+                .compose(counter -> counter.getAndIncrement())
+                .onFailure(startPromise::fail)
+                .onSuccess(index ->
+                {
+                    instance = index;
+
+                    client.query(Constants.DB_CONNECTION_CHECKUP_QUERY).execute(ar ->
+                    {
+                        if (ar.succeeded())
+                        {
+                            logger.info("✅ Connected to PostgreSQL successfully!");
+
+                            // Instances start one at a time so their IF NOT EXISTS DDL never races
+                            vertx.sharedData().getLocalLockWithTimeout(SCHEMA_LOCK, SCHEMA_LOCK_TIMEOUT_MS)
+                                    .onFailure(startPromise::fail)
+                                    .onSuccess(lock ->
+                                    {
+                                        var started = Promise.<Void>promise();
+
+                                        started.future()
+                                                .onComplete(v -> lock.release())
+                                                .onComplete(startPromise);
+
+                                        createTables(started);
+                                    });
+                        }
+                        else
+                        {
+                            logger.info("❌ DB connection failed: {}" , ar.cause().getMessage());
+
+                            startPromise.fail(ar.cause());
+                        }
+                    });
+                });
     }
 
     private void createTables(Promise<Void> startPromise)
@@ -89,19 +116,95 @@ public class DBVerticle extends AbstractVerticle
                 credential_profile_id INT,
                 ip TEXT NOT NULL UNIQUE,
                 port INT NOT NULL,
+                polling_interval INT NOT NULL DEFAULT 300 CHECK (polling_interval > 0),
                 FOREIGN KEY (credential_profile_id) REFERENCES credential_profiles(id) ON DELETE RESTRICT
             );
            """;
 
+        var provisioningJobsIntervalColumn = """
+           ALTER TABLE provisioning_jobs ADD COLUMN IF NOT EXISTS polling_interval INT NOT NULL DEFAULT 300 CHECK (polling_interval > 0);
+           """;
+
+        // Pre-partitioning installs had provisioned_data as a plain heap table with TEXT polled_at.
+        // It is kept aside as provisioned_data_legacy for manual migration
+        var legacyProvisionedDataTable = """
+            DO $$
+            BEGIN
+                IF EXISTS (SELECT 1 FROM pg_class WHERE relname = 'provisioned_data' AND relkind = 'r') THEN
+                    ALTER TABLE provisioned_data RENAME TO provisioned_data_legacy;
+                END IF;
+            END $$;
+            """;
+
         var provisionedDataTable = """
             CREATE TABLE IF NOT EXISTS provisioned_data (
-                id SERIAL PRIMARY KEY,
+                id BIGSERIAL,
                 job_id INT NOT NULL REFERENCES provisioning_jobs(id) ON DELETE CASCADE,
                 data JSONB NOT NULL,
-                polled_at TEXT NOT NULL
+                polled_at TIMESTAMPTZ NOT NULL,
+                PRIMARY KEY (id, polled_at)
+            ) PARTITION BY RANGE (polled_at);
+            """;
+
+        // Catches rows outside every daily partition (device clocks far off, a day whose partition
+        // is not made yet) so the bulk insert they are part of does not fail as a whole
+        var provisionedDataDefaultPartition = """
+            CREATE TABLE IF NOT EXISTS provisioned_data_default PARTITION OF provisioned_data DEFAULT;
+            """;
+
+        // Declared on the parent, so every partition gets its own copy
+        var provisionedDataIndex = """
+            CREATE INDEX IF NOT EXISTS provisioned_data_job_id_polled_at_idx ON provisioned_data (job_id, polled_at);
+            """;
+
+        // Pre-partitioning installs had plain rollup tables. They are kept aside as <table>_legacy
+        // for manual migration, like provisioned_data_legacy
+        var rollupTables = new StringBuilder();
+
+        for (var resolution : RollupResolution.values())
+        {
+            rollupTables.append("""
+                DO $$
+                BEGIN
+                    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = '%1$s' AND relkind = 'r') THEN
+                        ALTER TABLE %1$s RENAME TO %1$s_legacy;
+                    END IF;
+                END $$;
+                CREATE TABLE IF NOT EXISTS %1$s (
+                    job_id INT NOT NULL REFERENCES provisioning_jobs(id) ON DELETE CASCADE,
+                    metric TEXT NOT NULL,
+                    bucket TIMESTAMPTZ NOT NULL,
+                    min_value DOUBLE PRECISION NOT NULL,
+                    max_value DOUBLE PRECISION NOT NULL,
+                    sum_value DOUBLE PRECISION NOT NULL,
+                    sample_count BIGINT NOT NULL,
+                    PRIMARY KEY (job_id, metric, bucket)
+                ) PARTITION BY RANGE (bucket);
+                CREATE TABLE IF NOT EXISTS %1$s_default PARTITION OF %1$s DEFAULT;
+                """.formatted(resolution.getTable()));
+        }
+
+        var pollingNodesTable = """
+            CREATE TABLE IF NOT EXISTS polling_nodes (
+                node_id TEXT PRIMARY KEY,
+                heartbeat_at TIMESTAMPTZ NOT NULL
+            );
+            """;
+
+        var pollingLeasesTable = """
+            CREATE TABLE IF NOT EXISTS polling_leases (
+                bucket INT PRIMARY KEY,
+                node_id TEXT,
+                expires_at TIMESTAMPTZ NOT NULL DEFAULT now()
             );
             """;
 
+        var pollingLeaseBuckets = """
+            INSERT INTO polling_leases (bucket)
+            SELECT generate_series(0, %d)
+            ON CONFLICT (bucket) DO NOTHING;
+            """.formatted(Constants.POLLING_LEASE_BUCKETS - 1);
+
         var usersTable= """
            CREATE TABLE IF NOT EXISTS users (
                 id SERIAL PRIMARY KEY,
@@ -114,22 +217,77 @@ public class DBVerticle extends AbstractVerticle
                 credentialProfilesTable,
                 discoveryProfilesTable,
                 provisioningJobsTable,
+                provisioningJobsIntervalColumn,
+                legacyProvisionedDataTable,
                 provisionedDataTable,
+                provisionedDataDefaultPartition,
+                provisionedDataIndex,
+                rollupTables.toString(),
+                pollingNodesTable,
+                pollingLeasesTable,
+                pollingLeaseBuckets,
                 usersTable
         };
 
         executeBatch(queries, 0, startPromise);
     }
 
+    private Future<Void> maintainPartitions(List<PartitionManager> partitionManagers, int index)
+    {
+        if (index >= partitionManagers.size())
+        {
+            return Future.succeededFuture();
+        }
+
+        return partitionManagers.get(index).maintain()
+                .compose(v -> maintainPartitions(partitionManagers, index + 1));
+    }
+
     private void executeBatch(String[] queries, int index, Promise<Void> promise)
     {
         if (index >= queries.length)
         {
             logger.info("All tables are verified/created.");
 
-            setupEventBusConsumer();
+            var partitionManagers = new ArrayList<PartitionManager>();
+
+            partitionManagers.add(new PartitionManager(client, "provisioned_data", "polled_at", ChronoUnit.DAYS,
+                    config().getInteger(Constants.CONFIG_DATA_PARTITION_PREMAKE_DAYS, Constants.DEFAULT_DATA_PARTITION_PREMAKE_DAYS),
+                    config().getInteger(Constants.CONFIG_DATA_RETENTION_DAYS, Constants.DEFAULT_DATA_RETENTION_DAYS)));
+
+            // Rollups are written as the raw rows arrive, so the current and the next period suffice
+            for (var resolution : RollupResolution.values())
+            {
+                partitionManagers.add(new PartitionManager(client, resolution.getTable(), "bucket", resolution.getPartitionPeriod(),
+                        1, resolution.getRetentionDays(config())));
+            }
+
+            // Maintenance is database-wide, so only the first instance runs it
+            var maintained = instance == 0 ? maintainPartitions(partitionManagers, 0) : Future.<Void>succeededFuture();
+
+            maintained
+                    .compose(v ->
+                    {
+                        if (instance == 0)
+                        {
+                            vertx.setPeriodic(Constants.PARTITION_MAINTENANCE_INTERVAL_MS, id -> maintainPartitions(partitionManagers, 0)
+                                    .onFailure(err -> logger.error("Partition maintenance failed: {}", err.getMessage())));
+                        }
+
+                        return startMetricsWriter();
+                    })
+                    .onSuccess(v ->
+                    {
+                        setupEventBusConsumer();
+
+                        promise.complete();
+                    })
+                    .onFailure(err ->
+                    {
+                        logger.error("DB verticle startup failed: {}", err.getMessage());
 
-            promise.complete();
+                        promise.fail(err);
+                    });
 
             return;
         }
@@ -149,10 +307,178 @@ public class DBVerticle extends AbstractVerticle
         });
     }
 
+    private Future<Void> startMetricsWriter()
+    {
+        var spoolRoot = Path.of(config().getString(Constants.CONFIG_SPOOL_DIR, Constants.DEFAULT_SPOOL_DIR));
+
+        // Every instance writes and replays its own spool; the first keeps the top-level directory
+        var spoolDir = instance > 0 ? spoolRoot.resolve(INSTANCE_SPOOL_PREFIX + instance) : spoolRoot;
+
+        var metricsWriter = createMetricsWriter(spoolDir);
+
+        metricsWriters.add(metricsWriter);
+
+        var started = metricsWriter.start();
+
+        if (instance == 0)
+        {
+            started = started.compose(v -> adoptOrphanSpools(spoolRoot));
+        }
+
+        return started.onSuccess(v ->
+        {
+            vertx.eventBus().<JsonObject>consumer(Constants.EVENTBUS_INGESTION_ADDRESS, message -> metricsWriter.write(message.body()));
+
+            vertx.eventBus().consumer(Constants.EVENTBUS_INGESTION_STATS_ADDRESS + "." + instance, message -> message.reply(sumStats(
+                    metricsWriters.stream().map(MetricsWriter::getStats).toList())));
+
+            if (instance == 0)
+            {
+                vertx.eventBus().consumer(Constants.EVENTBUS_INGESTION_STATS_ADDRESS, this::replyIngestionStats);
+            }
+        });
+    }
+
+    private MetricsWriter createMetricsWriter(Path spoolDir)
+    {
+        var spool = new MetricsSpool(spoolDir,
+                config().getInteger(Constants.CONFIG_SPOOL_SEGMENT_BYTES, Constants.DEFAULT_SPOOL_SEGMENT_BYTES),
+                config().getLong(Constants.CONFIG_SPOOL_MAX_BYTES, Constants.DEFAULT_SPOOL_MAX_BYTES));
+
+        return new MetricsWriter(vertx, client, spool,
+                config().getInteger(Constants.CONFIG_INGESTION_FLUSH_ROWS, Constants.DEFAULT_INGESTION_FLUSH_ROWS),
+                config().getLong(Constants.CONFIG_INGESTION_FLUSH_INTERVAL_MS, Constants.DEFAULT_INGESTION_FLUSH_INTERVAL_MS));
+    }
+
+    // Spools of instances beyond db.verticle.instances (the count was lowered since they were
+    // written) have no instance of their own any more. The first instance replays them; they get
+    // no new records, so once drained they stay empty
+    private Future<Void> adoptOrphanSpools(Path spoolRoot)
+    {
+        var instances = config().getInteger(Constants.CONFIG_DB_VERTICLE_INSTANCES, Constants.DEFAULT_DB_VERTICLE_INSTANCES);
+
+        return vertx.executeBlocking(() ->
+                {
+                    var orphans = new ArrayList<Path>();
+
+                    if (!Files.isDirectory(spoolRoot))
+                    {
+                        return orphans;
+                    }
+
+                    try (var entries = Files.list(spoolRoot))
+                    {
+                        for (var entry : entries.toList())
+                        {
+                            var name = entry.getFileName().toString();
+
+                            if (Files.isDirectory(entry) && name.startsWith(INSTANCE_SPOOL_PREFIX)
+                                    && parseInstance(name.substring(INSTANCE_SPOOL_PREFIX.length())) >= instances)
+                            {
+                                orphans.add(entry);
+                            }
+                        }
+                    }
+
+                    return orphans;
+                }, true)
+                .compose(orphans ->
+                {
+                    var started = new ArrayList<Future<Void>>();
+
+                    for (var orphan : orphans)
+                    {
+                        logger.info("Replaying spool {} of an instance no longer deployed", orphan);
+
+                        var orphanWriter = createMetricsWriter(orphan);
+
+                        metricsWriters.add(orphanWriter);
+
+                        started.add(orphanWriter.start());
+                    }
+
+                    return Future.all(started).mapEmpty();
+                });
+    }
+
+    private static int parseInstance(String suffix)
+    {
+        try
+        {
+            return Integer.parseInt(suffix);
+        }
+        catch (NumberFormatException exception)
+        {
+            return -1;
+        }
+    }
+
+    // Sums the figures of every instance, each of which answers for its own writers on its own loop
+    private void replyIngestionStats(Message<Object> message)
+    {
+        var instances = config().getInteger(Constants.CONFIG_DB_VERTICLE_INSTANCES, Constants.DEFAULT_DB_VERTICLE_INSTANCES);
+
+        var replies = new ArrayList<Future<Message<JsonObject>>>();
+
+        for (int i = 0; i < instances; i++)
+        {
+            replies.add(vertx.eventBus().request(Constants.EVENTBUS_INGESTION_STATS_ADDRESS + "." + i, null));
+        }
+
+        Future.join(replies).onComplete(ar ->
+        {
+            var answered = replies.stream().filter(Future::succeeded).map(reply -> reply.result().body()).toList();
+
+            message.reply(sumStats(answered)
+                    .put("instances", instances)
+                    .put("answered_instances", answered.size()));
+        });
+    }
+
+    private static JsonObject sumStats(List<JsonObject> stats)
+    {
+        var total = new JsonObject();
+
+        for (var instanceStats : stats)
+        {
+            instanceStats.forEach(entry ->
+            {
+                if (entry.getValue() instanceof Number number)
+                {
+                    total.put(entry.getKey(), total.getLong(entry.getKey(), 0L) + number.longValue());
+                }
+            });
+        }
+
+        return total;
+    }
+
     private void setupEventBusConsumer()
     {
+        // Every instance answers from the same process-wide pool figures
+        vertx.eventBus().consumer(Constants.EVENTBUS_DB_POOL_STATS_ADDRESS, message -> message.reply(DatabasePool.getStats()));
+
         vertx.eventBus().consumer(Constants.EVENTBUS_DATABASE_ADDRESS, message -> {
 
+            if (message.body() instanceof QueryCommand command)
+            {
+                execute(command).onComplete(result ->
+                {
+                    if (result.succeeded())
+                    {
+                        message.reply(result.result());
+                    }
+                    else
+                    {
+                        logger.error("❌ Query failed: {}", result.cause().getMessage());
+
+                        message.fail(500, result.cause().getMessage());
+                    }
+                });
+
+                return;
+            }
+
             var input = (JsonObject) message.body();
 
             try
@@ -183,7 +509,9 @@ public class DBVerticle extends AbstractVerticle
 
                     logger.info("Executing Batch Query: {} with {} parameter sets", query, batchParams.size());
 
-                    client.preparedQuery(query).executeBatch(batchParams, ar ->
+                    var batchQuery = query;
+
+                    DatabasePool.withCommand(pipelinedClient, pipelined -> pipelined.preparedQuery(batchQuery).executeBatch(batchParams)).onComplete(ar ->
                     {
                         if (ar.succeeded())
                         {
@@ -224,28 +552,15 @@ public class DBVerticle extends AbstractVerticle
 
                     logger.info("Executing Query: {}", query);
 
-                    client.preparedQuery(query).execute(tuple, ar ->
+                    var singleQuery = query;
+
+                    DatabasePool.withCommand(pipelinedClient, pipelined -> pipelined.preparedQuery(singleQuery).execute(tuple)).onComplete(ar ->
                     {
                         if (ar.succeeded())
                         {
-                            var rows = ar.result();
-
-                            var jsonRows = new JsonArray();
-
-                            rows.forEach(row ->
-                            {
-                                var obj = new JsonObject();
-
-                                for (int i = 0; i < row.size(); i++)
-                                {
-                                    obj.put(row.getColumnName(i), row.getValue(i));
-                                }
-                                jsonRows.add(obj);
-                            });
-
                             message.reply(new JsonObject()
                                     .put(Constants.SUCCESS, true)
-                                    .put(Constants.DATA, jsonRows));
+                                    .put(Constants.DATA, new QueryResult(ar.result()).toJsonArray()));
                         }
                         else
                         {
@@ -267,10 +582,26 @@ public class DBVerticle extends AbstractVerticle
         });
     }
 
+    // Typed path: the RowSet goes back to the caller as is, without building JSON here
+    private Future<QueryResult> execute(QueryCommand command)
+    {
+        var query = command.getSql();
+
+        var sql = (query.trim().toLowerCase().startsWith(Constants.DB_INSERT) || query.trim().toLowerCase().startsWith(Constants.DB_UPDATE)) && !query.toLowerCase().contains("returning")
+                ? query + RETURNING_ID
+                : query;
+
+        return DatabasePool.withCommand(pipelinedClient, pipelined -> pipelined.preparedQuery(sql).execute(command.getParams())).map(QueryResult::new);
+    }
+
     @Override
     public void stop() {
         if (client != null) {
             client.close();
         }
+
+        if (pipelinedClient != null) {
+            pipelinedClient.close();
+        }
     }
 }
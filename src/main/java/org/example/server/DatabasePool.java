@@ -0,0 +1,197 @@
+package org.example.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgBuilder;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.SqlConnection;
+import org.example.utils.Constants;
+import org.example.utils.Utils;
+
+import java.util.function.Function;
+
+/*
+ * The application's Postgres clients. Both are named and shared, so every DBVerticle instance and
+ * the in-process data access path of the HTTP verticles all get the same connections; each caller
+ * closes its own reference and a client closes with the last one. The first caller's config sizes
+ * them, and their connections are spread over one event loop per DBVerticle instance.
+ *
+ * Request traffic (single statements and parameter batches) goes through the pipelined client:
+ * one connection per event loop, each carrying up to db.pipelining.limit commands in flight, so
+ * many short queries share few connections instead of each waiting for one of its own. Vert.x
+ * hands out no connection of a pipelined client, so withCommand counts commands in flight and
+ * their latency. Work that needs one connection for several statements (schema setup, ingestion,
+ * cursors) borrows from the pool through withConnection, which counts waiting and in-use
+ * connections and acquisition latency. Both sets of figures are served on
+ * EVENTBUS_DB_POOL_STATS_ADDRESS.
+ */
+public final class DatabasePool
+{
+    private static final String NAME = "nms-db";
+
+    private static final String PIPELINED_NAME = "nms-db-pipelined";
+
+    private static final String EXPORT_NAME = "nms-metrics-export";
+
+    private static final PoolStats stats = new PoolStats();
+
+    private static volatile JsonObject settings = new JsonObject();
+
+    private DatabasePool()
+    {
+    }
+
+    public static Pool create(Vertx vertx, JsonObject config)
+    {
+        var maxSize = config.getInteger(Constants.CONFIG_DB_POOL_SIZE, Constants.DEFAULT_DB_POOL_SIZE);
+
+        var maxWaitQueueSize = config.getInteger(Constants.CONFIG_DB_POOL_MAX_WAIT_QUEUE_SIZE, Constants.DEFAULT_DB_POOL_MAX_WAIT_QUEUE_SIZE);
+
+        return PgBuilder.pool()
+                .with(new PoolOptions()
+                        .setMaxSize(maxSize)
+                        .setMaxWaitQueueSize(maxWaitQueueSize)
+                        .setEventLoopSize(getEventLoops(config))
+                        .setShared(true)
+                        .setName(NAME))
+                .connectingTo(getConnectOptions(config))
+                .using(vertx)
+                .build();
+    }
+
+    public static SqlClient createPipelined(Vertx vertx, JsonObject config)
+    {
+        var eventLoops = getEventLoops(config);
+
+        return PgBuilder.client()
+                .with(new PoolOptions()
+                        .setMaxSize(eventLoops)
+                        .setMaxWaitQueueSize(config.getInteger(Constants.CONFIG_DB_POOL_MAX_WAIT_QUEUE_SIZE, Constants.DEFAULT_DB_POOL_MAX_WAIT_QUEUE_SIZE))
+                        .setEventLoopSize(eventLoops)
+                        .setShared(true)
+                        .setName(PIPELINED_NAME))
+                .connectingTo(getConnectOptions(config))
+                .using(vertx)
+                .build();
+    }
+
+    // Connections of MetricsQueryService, each held for a whole cursor export; kept apart so long
+    // exports never take connections from request traffic
+    public static Pool createExportPool(Vertx vertx, JsonObject config)
+    {
+        return PgBuilder.pool()
+                .with(new PoolOptions()
+                        .setMaxSize(config.getInteger(Constants.CONFIG_EXPORT_POOL_SIZE, Constants.DEFAULT_EXPORT_POOL_SIZE))
+                        .setMaxWaitQueueSize(config.getInteger(Constants.CONFIG_EXPORT_POOL_MAX_WAIT_QUEUE_SIZE, Constants.DEFAULT_EXPORT_POOL_MAX_WAIT_QUEUE_SIZE))
+                        .setShared(true)
+                        .setName(EXPORT_NAME))
+                .connectingTo(getConnectOptions(config))
+                .using(vertx)
+                .build();
+    }
+
+    private static int getEventLoops(JsonObject config)
+    {
+        return config.getInteger(Constants.CONFIG_DB_VERTICLE_INSTANCES, Constants.DEFAULT_DB_VERTICLE_INSTANCES);
+    }
+
+    private static PgConnectOptions getConnectOptions(JsonObject config)
+    {
+        var pipeliningLimit = config.getInteger(Constants.CONFIG_DB_PIPELINING_LIMIT, Constants.DEFAULT_DB_PIPELINING_LIMIT);
+
+        var statementCacheSize = config.getInteger(Constants.CONFIG_DB_PREPARED_STATEMENT_CACHE_SIZE, Constants.DEFAULT_DB_PREPARED_STATEMENT_CACHE_SIZE);
+
+        var connectOptions = Utils.getConnectOptions()
+                .setPipeliningLimit(pipeliningLimit)
+                .setCachePreparedStatements(statementCacheSize > 0);
+
+        if (statementCacheSize > 0)
+        {
+            connectOptions.setPreparedStatementCacheMaxSize(statementCacheSize);
+        }
+
+        // The shared clients keep the options of whoever created them first
+        if (settings.isEmpty())
+        {
+            settings = new JsonObject()
+                    .put("max_size", config.getInteger(Constants.CONFIG_DB_POOL_SIZE, Constants.DEFAULT_DB_POOL_SIZE))
+                    .put("max_wait_queue_size", config.getInteger(Constants.CONFIG_DB_POOL_MAX_WAIT_QUEUE_SIZE, Constants.DEFAULT_DB_POOL_MAX_WAIT_QUEUE_SIZE))
+                    .put("pipelining_limit", pipeliningLimit)
+                    .put("pipelined_connections", getEventLoops(config))
+                    .put("prepared_statement_cache_size", statementCacheSize)
+                    .put("event_loops", getEventLoops(config));
+        }
+
+        return connectOptions;
+    }
+
+    // Sends one command (a statement or a parameter batch) through the pipelined client, timing it
+    public static <T> Future<T> withCommand(SqlClient client, Function<SqlClient, Future<T>> function)
+    {
+        var sent = System.nanoTime();
+
+        stats.commandSent();
+
+        Future<T> result;
+
+        try
+        {
+            result = function.apply(client);
+        }
+        catch (RuntimeException exception)
+        {
+            result = Future.failedFuture(exception);
+        }
+
+        return result.onComplete(ar -> stats.commandCompleted(System.nanoTime() - sent, ar.succeeded()));
+    }
+
+    // Borrows a connection for the duration of function, timing how long the borrow waited
+    public static <T> Future<T> withConnection(Pool client, Function<SqlConnection, Future<T>> function)
+    {
+        var requested = System.nanoTime();
+
+        stats.requested();
+
+        return client.getConnection().transform(acquire ->
+        {
+            if (acquire.failed())
+            {
+                stats.failed();
+
+                return Future.failedFuture(acquire.cause());
+            }
+
+            stats.acquired(System.nanoTime() - requested);
+
+            var connection = acquire.result();
+
+            Future<T> result;
+
+            try
+            {
+                result = function.apply(connection);
+            }
+            catch (RuntimeException exception)
+            {
+                result = Future.failedFuture(exception);
+            }
+
+            return result.eventually(() ->
+            {
+                stats.released();
+
+                return connection.close();
+            });
+        });
+    }
+
+    public static JsonObject getStats()
+    {
+        return settings.copy().mergeIn(stats.toJson());
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Latencies recorded from any thread into power-of-two microsecond buckets. The reported
+ * percentiles are bucket upper bounds.
+ */
+class LatencyHistogram
+{
+    private static final int BUCKETS = 40;
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos)
+    {
+        count.increment();
+
+        totalNanos.add(nanos);
+
+        maxNanos.accumulateAndGet(nanos, Math::max);
+
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1_000)));
+    }
+
+    long count()
+    {
+        return count.sum();
+    }
+
+    double meanMillis()
+    {
+        var samples = count.sum();
+
+        return samples == 0 ? 0.0 : totalNanos.sum() / 1e6 / samples;
+    }
+
+    double maxMillis()
+    {
+        return maxNanos.get() / 1e6;
+    }
+
+    double percentileMillis(double fraction)
+    {
+        var samples = count.sum();
+
+        if (samples == 0)
+        {
+            return 0.0;
+        }
+
+        var rank = (long) Math.ceil(samples * fraction);
+
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += buckets.get(i);
+
+            if (seen >= rank)
+            {
+                return (1L << i) / 1e3;
+            }
+        }
+
+        return maxMillis();
+    }
+}
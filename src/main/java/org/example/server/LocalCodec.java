@@ -0,0 +1,63 @@
+package org.example.server;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+
+/*
+ * Pass-through codec for objects that only travel between verticles of this JVM: the receiver
+ * gets the sender's instance. These objects must not be mutated once sent, and they cannot
+ * cross a clustered event bus.
+ */
+public class LocalCodec<T> implements MessageCodec<T, T>
+{
+    private final String name;
+
+    private LocalCodec(Class<T> type)
+    {
+        this.name = "local-" + type.getName();
+    }
+
+    public static <T> void register(EventBus eventBus, Class<T> type)
+    {
+        eventBus.registerDefaultCodec(type, new LocalCodec<>(type));
+    }
+
+    // Registers the codecs of the DBVerticle protocol
+    public static void registerQueryCodecs(EventBus eventBus)
+    {
+        register(eventBus, QueryCommand.class);
+
+        register(eventBus, QueryResult.class);
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, T value)
+    {
+        throw new UnsupportedOperationException(name + " is local only");
+    }
+
+    @Override
+    public T decodeFromWire(int position, Buffer buffer)
+    {
+        throw new UnsupportedOperationException(name + " is local only");
+    }
+
+    @Override
+    public T transform(T value)
+    {
+        return value;
+    }
+
+    @Override
+    public String name()
+    {
+        return name;
+    }
+
+    @Override
+    public byte systemCodecID()
+    {
+        return -1;
+    }
+}
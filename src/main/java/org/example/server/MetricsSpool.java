@@ -0,0 +1,555 @@
+package org.example.server;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only on-disk spool for polled results that could not be written to the database.
+ *
+ * Data lives in fixed-size, memory-mapped segment files (segment-<id>.log). Each record is
+ * [int length][int crc32][UTF-8 JSON] and is published by writing its length last, so a zero
+ * length marks the end of a segment and a record torn by a crash fails its CRC and is discarded on
+ * the next open. The read position is checkpointed after every replayed batch and fully replayed
+ * segments are deleted. Replay is at-least-once: a crash between a replayed insert and its
+ * checkpoint replays that batch again.
+ *
+ * Total size is bounded by maxBytes. When a new segment would exceed it, the oldest segment is
+ * dropped and its unreplayed records are counted as dropped.
+ *
+ * Damage found on open is contained rather than fatal: a segment cut short is zero-extended back
+ * to its full size (the records before the cut survive), a record that fails its CRC ends its
+ * segment but not the spool, and an unreadable checkpoint restarts replay at the oldest segment.
+ *
+ * Records the database will never accept are moved to dead-letter.jsonl, one JSON document per
+ * line, which rolls over to dead-letter.jsonl.1 once it reaches the segment size.
+ *
+ * All methods block on disk I/O and must run on a worker thread.
+ */
+class MetricsSpool
+{
+    private static final Logger logger = LoggerFactory.getLogger(MetricsSpool.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final long maxBytes;
+
+    // Segment id -> file, oldest first
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    private long writeSegmentId;
+
+    private MappedByteBuffer writeBuffer;
+
+    private int writePosition;
+
+    private long readSegmentId;
+
+    private MappedByteBuffer readBuffer;
+
+    private long readBufferSegmentId = -1;
+
+    private int readPosition;
+
+    // Where the read position moves to once the batch returned by the last peek is committed
+    private long pendingSegmentId;
+
+    private int pendingPosition;
+
+    private int pendingRecords;
+
+    private long pendingBytes;
+
+    private long backlogRecords;
+
+    private long backlogBytes;
+
+    private long spooledRecords;
+
+    private long replayedRecords;
+
+    private long droppedRecords;
+
+    private long deadLetteredRecords;
+
+    MetricsSpool(Path directory, int segmentBytes, long maxBytes)
+    {
+        this.directory = directory;
+
+        this.segmentBytes = segmentBytes;
+
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void open() throws IOException
+    {
+        Files.createDirectories(directory);
+
+        try (var files = Files.list(directory))
+        {
+            files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .forEach(file -> segments.put(segmentId(file), file));
+        }
+
+        for (var file : segments.values())
+        {
+            // Mapping past the end of a file cut short would fault on access
+            if (Files.size(file) < segmentBytes)
+            {
+                logger.warn("Spool segment {} is truncated to {} bytes, recovering the records before the cut", file.getFileName(), Files.size(file));
+
+                extend(file);
+            }
+        }
+
+        readCheckpoint();
+
+        // Segments before the checkpoint were fully replayed before the last shutdown
+        while (!segments.isEmpty() && segments.firstKey() < readSegmentId)
+        {
+            Files.deleteIfExists(segments.pollFirstEntry().getValue());
+        }
+
+        if (segments.isEmpty())
+        {
+            createSegment(readSegmentId);
+
+            readPosition = 0;
+        }
+        else if (segments.firstKey() > readSegmentId)
+        {
+            readSegmentId = segments.firstKey();
+
+            readPosition = 0;
+        }
+
+        for (var entry : segments.entrySet())
+        {
+            var start = entry.getKey() == readSegmentId ? readPosition : 0;
+
+            var end = scan(map(entry.getValue(), FileChannel.MapMode.READ_ONLY), start);
+
+            writeSegmentId = entry.getKey();
+
+            writePosition = end;
+        }
+
+        writeBuffer = map(segments.get(writeSegmentId), FileChannel.MapMode.READ_WRITE);
+
+        // Clear whatever a crash left after the last valid record so it can never resurface
+        // behind records appended from now on
+        for (int position = writePosition; position < segmentBytes; position++)
+        {
+            writeBuffer.put(position, (byte) 0);
+        }
+
+        writeBuffer.force();
+
+        logger.info("Spool opened at {} with {} records ({} bytes) pending replay", directory, backlogRecords, backlogBytes);
+    }
+
+    synchronized long getBacklogRecords()
+    {
+        return backlogRecords;
+    }
+
+    synchronized JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("backlog_records", backlogRecords)
+                .put("backlog_bytes", backlogBytes)
+                .put("segments", segments.size())
+                .put("spooled_records", spooledRecords)
+                .put("replayed_records", replayedRecords)
+                .put("dropped_records", droppedRecords)
+                .put("dead_lettered_records", deadLetteredRecords);
+    }
+
+    synchronized void append(List<JsonObject> rows) throws IOException
+    {
+        var crc = new CRC32();
+
+        for (var row : rows)
+        {
+            var payload = row.encode().getBytes(StandardCharsets.UTF_8);
+
+            if (HEADER_BYTES + payload.length > segmentBytes)
+            {
+                logger.warn("Dropping polled result of {} bytes, larger than a spool segment", payload.length);
+
+                droppedRecords++;
+
+                continue;
+            }
+
+            if (writePosition + HEADER_BYTES + payload.length > segmentBytes)
+            {
+                rollSegment();
+            }
+
+            crc.reset();
+
+            crc.update(payload);
+
+            writeBuffer.putInt(writePosition + 4, (int) crc.getValue());
+
+            writeBuffer.put(writePosition + HEADER_BYTES, payload);
+
+            // Length goes last: until it is written the record does not exist for readers
+            writeBuffer.putInt(writePosition, payload.length);
+
+            writePosition += HEADER_BYTES + payload.length;
+
+            backlogRecords++;
+
+            backlogBytes += HEADER_BYTES + payload.length;
+
+            spooledRecords++;
+        }
+
+        writeBuffer.force();
+    }
+
+    synchronized void deadLetter(List<JsonObject> rows) throws IOException
+    {
+        var file = directory.resolve(DEAD_LETTER_FILE);
+
+        if (Files.exists(file) && Files.size(file) >= segmentBytes)
+        {
+            Files.move(file, directory.resolve(DEAD_LETTER_FILE + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        var lines = new StringBuilder();
+
+        for (var row : rows)
+        {
+            lines.append(row.encode()).append('\n');
+        }
+
+        Files.writeString(file, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+
+        deadLetteredRecords += rows.size();
+    }
+
+    // Returns up to maxRecords records from the read position without consuming them
+    synchronized List<JsonObject> peek(int maxRecords) throws IOException
+    {
+        var records = new ArrayList<JsonObject>();
+
+        var segmentId = readSegmentId;
+
+        var position = readPosition;
+
+        pendingBytes = 0;
+
+        while (records.size() < maxRecords && segments.containsKey(segmentId))
+        {
+            var buffer = readBuffer(segmentId);
+
+            var length = recordLength(buffer, position);
+
+            if (length < 0)
+            {
+                // End of this segment; move on unless it is the one still being written
+                var next = segments.higherKey(segmentId);
+
+                if (next == null || segmentId == writeSegmentId)
+                {
+                    break;
+                }
+
+                segmentId = next;
+
+                position = 0;
+
+                continue;
+            }
+
+            var payload = new byte[length];
+
+            buffer.get(position + HEADER_BYTES, payload);
+
+            records.add(new JsonObject(new String(payload, StandardCharsets.UTF_8)));
+
+            position += HEADER_BYTES + length;
+
+            pendingBytes += HEADER_BYTES + length;
+        }
+
+        pendingSegmentId = segmentId;
+
+        pendingPosition = position;
+
+        pendingRecords = records.size();
+
+        return records;
+    }
+
+    // Consumes the records returned by the last peek
+    synchronized void commit() throws IOException
+    {
+        readSegmentId = pendingSegmentId;
+
+        readPosition = pendingPosition;
+
+        backlogRecords = Math.max(0, backlogRecords - pendingRecords);
+
+        backlogBytes = Math.max(0, backlogBytes - pendingBytes);
+
+        replayedRecords += pendingRecords;
+
+        pendingRecords = 0;
+
+        pendingBytes = 0;
+
+        while (segments.firstKey() < readSegmentId)
+        {
+            Files.deleteIfExists(segments.pollFirstEntry().getValue());
+        }
+
+        writeCheckpoint();
+    }
+
+    private void rollSegment() throws IOException
+    {
+        writeBuffer.force();
+
+        // Bound the spool: drop the oldest segment, unreplayed records included
+        while ((long) (segments.size() + 1) * segmentBytes > maxBytes && segments.size() > 1)
+        {
+            dropOldestSegment();
+        }
+
+        createSegment(writeSegmentId + 1);
+
+        writeSegmentId++;
+
+        writeBuffer = map(segments.get(writeSegmentId), FileChannel.MapMode.READ_WRITE);
+
+        writePosition = 0;
+    }
+
+    private void dropOldestSegment() throws IOException
+    {
+        var oldest = segments.firstEntry();
+
+        var start = oldest.getKey() == readSegmentId ? readPosition : 0;
+
+        var before = backlogRecords;
+
+        var beforeBytes = backlogBytes;
+
+        // scan() adds what it finds, so run it on a zeroed counter to learn what is being dropped
+        backlogRecords = 0;
+
+        backlogBytes = 0;
+
+        scan(readBuffer(oldest.getKey()), start);
+
+        var dropped = backlogRecords;
+
+        backlogRecords = Math.max(0, before - dropped);
+
+        backlogBytes = Math.max(0, beforeBytes - backlogBytes);
+
+        droppedRecords += dropped;
+
+        logger.warn("Spool full, dropping segment {} with {} unreplayed records", oldest.getValue().getFileName(), dropped);
+
+        segments.pollFirstEntry();
+
+        Files.deleteIfExists(oldest.getValue());
+
+        if (oldest.getKey() >= readSegmentId)
+        {
+            readSegmentId = segments.firstKey();
+
+            readPosition = 0;
+        }
+
+        // A batch peeked from the dropped segment must not move the read position on commit
+        pendingSegmentId = readSegmentId;
+
+        pendingPosition = readPosition;
+
+        pendingRecords = 0;
+
+        pendingBytes = 0;
+
+        writeCheckpoint();
+    }
+
+    // Counts the valid records from start and returns the position right after the last one
+    private int scan(ByteBuffer buffer, int start)
+    {
+        var position = start;
+
+        int length;
+
+        while ((length = recordLength(buffer, position)) >= 0)
+        {
+            position += HEADER_BYTES + length;
+
+            backlogRecords++;
+
+            backlogBytes += HEADER_BYTES + length;
+        }
+
+        return position;
+    }
+
+    // Length of the valid record at position, or -1 at the end of the segment or at a torn record
+    private int recordLength(ByteBuffer buffer, int position)
+    {
+        if (position + HEADER_BYTES > segmentBytes)
+        {
+            return -1;
+        }
+
+        var length = buffer.getInt(position);
+
+        if (length <= 0 || position + HEADER_BYTES + length > segmentBytes)
+        {
+            return -1;
+        }
+
+        var payload = new byte[length];
+
+        buffer.get(position + HEADER_BYTES, payload);
+
+        var crc = new CRC32();
+
+        crc.update(payload);
+
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? length : -1;
+    }
+
+    private MappedByteBuffer readBuffer(long segmentId) throws IOException
+    {
+        if (segmentId == writeSegmentId && writeBuffer != null)
+        {
+            return writeBuffer;
+        }
+
+        if (readBufferSegmentId != segmentId)
+        {
+            readBuffer = map(segments.get(segmentId), FileChannel.MapMode.READ_ONLY);
+
+            readBufferSegmentId = segmentId;
+        }
+
+        return readBuffer;
+    }
+
+    private void createSegment(long segmentId) throws IOException
+    {
+        var file = directory.resolve(SEGMENT_PREFIX + String.format("%020d", segmentId) + SEGMENT_SUFFIX);
+
+        extend(file);
+
+        segments.put(segmentId, file);
+    }
+
+    // Sparse, zero filled up to the segment size: a zero length marks the end of written data
+    private void extend(Path file) throws IOException
+    {
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            channel.truncate(segmentBytes);
+
+            channel.write(ByteBuffer.allocate(1), segmentBytes - 1);
+        }
+    }
+
+    private MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException
+    {
+        var options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] { StandardOpenOption.READ }
+                : new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+
+        // The mapping stays valid after the channel is closed
+        try (var channel = FileChannel.open(file, options))
+        {
+            return channel.map(mode, 0, segmentBytes);
+        }
+    }
+
+    private void readCheckpoint() throws IOException
+    {
+        var checkpoint = directory.resolve(CHECKPOINT_FILE);
+
+        if (!Files.exists(checkpoint))
+        {
+            readSegmentId = segments.isEmpty() ? 0 : segments.firstKey();
+
+            readPosition = 0;
+
+            return;
+        }
+
+        try
+        {
+            var parts = Files.readString(checkpoint).trim().split(" ");
+
+            readSegmentId = Long.parseLong(parts[0]);
+
+            readPosition = Integer.parseInt(parts[1]);
+
+            if (readPosition < 0 || readPosition > segmentBytes)
+            {
+                throw new NumberFormatException("position " + readPosition + " outside a segment");
+            }
+        }
+        catch (RuntimeException exception)
+        {
+            // Replay is at-least-once anyway, so starting over only repeats records
+            logger.warn("Spool checkpoint unreadable ({}), replaying from the oldest segment", exception.getMessage());
+
+            readSegmentId = segments.isEmpty() ? 0 : segments.firstKey();
+
+            readPosition = 0;
+        }
+    }
+
+    private void writeCheckpoint() throws IOException
+    {
+        var temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+
+        Files.writeString(temporary, readSegmentId + " " + readPosition);
+
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long segmentId(Path file)
+    {
+        var name = file.getFileName().toString();
+
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,359 @@
+package org.example.server;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgException;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.Tuple;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+ * Bulk ingestion path for polled metrics.
+ *
+ * Device results from every polling batch are coalesced in memory and flushed as one statement once
+ * flushRows results are buffered or flushInterval has passed since the first buffered one. A flush
+ * binds three arrays and unnests them server side, so each flush is a single prepared statement
+ * with three parameters whatever the row count. The reactive Postgres client has no COPY support,
+ * so this is the closest equivalent it offers.
+ *
+ * The same statement folds every top-level numeric metric of the flushed rows into the 1-minute,
+ * 1-hour and 1-day rollup tables (min, max, sum and count per device, metric and bucket), so the
+ * rollups are always exactly as current as the raw data.
+ *
+ * When the database fails a flush, or is too slow and MAX_IN_FLIGHT_FLUSHES flushes are already
+ * pending, the rows go to the on-disk MetricsSpool instead. While the spool holds a backlog, or an
+ * append to it is still queued, every new flush is appended behind it, and the backlog is replayed
+ * in order in flushRows sized batches until it is empty, so polling never waits on the database.
+ * Appends and replay batches run one after another on a single queue, so a flush can never
+ * overtake rows that are still on their way into the spool.
+ *
+ * A replay batch the database rejects for its data (SQLSTATE class 22 or 23, e.g. a malformed
+ * value or a job deleted since) is split in halves until the offending records are isolated; the
+ * rest is inserted, the offenders go to the spool's dead-letter file and the read position moves
+ * past them. Any other failure is taken as transient and the batch is retried on the next tick.
+ */
+public class MetricsWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(MetricsWriter.class);
+
+    private static final String QUERY_ROLLUP_UPSERT = """
+            %s AS (
+                INSERT INTO %s AS rollup (job_id, metric, bucket, min_value, max_value, sum_value, sample_count)
+                SELECT job_id, metric, date_trunc('%s', polled_at, 'UTC'), min(value), max(value), sum(value), count(*)
+                FROM samples
+                GROUP BY 1, 2, 3
+                ORDER BY 1, 2, 3
+                ON CONFLICT (job_id, metric, bucket) DO UPDATE SET
+                    min_value = LEAST(rollup.min_value, EXCLUDED.min_value),
+                    max_value = GREATEST(rollup.max_value, EXCLUDED.max_value),
+                    sum_value = rollup.sum_value + EXCLUDED.sum_value,
+                    sample_count = rollup.sample_count + EXCLUDED.sample_count
+            )
+        """;
+
+    static final String QUERY_BULK_INSERT = """
+            WITH input AS (
+                SELECT job_id, data::jsonb AS data, COALESCE(polled_at::timestamptz, now()) AS polled_at
+                FROM unnest($1::int[], $2::text[], $3::text[]) AS rows (job_id, data, polled_at)
+            ),
+            raw AS (
+                INSERT INTO provisioned_data (job_id, data, polled_at)
+                SELECT job_id, data, polled_at FROM input
+            ),
+            samples AS (
+                SELECT input.job_id, metric.key AS metric, input.polled_at, metric.value::text::double precision AS value
+                FROM input, jsonb_each(input.data) AS metric
+                WHERE jsonb_typeof(metric.value) = 'number'
+            ),
+            %s,
+            %s,
+            %s
+            SELECT count(*) FROM input
+        """.formatted(
+                QUERY_ROLLUP_UPSERT.formatted("rollup_minute", "metric_rollups_1m", "minute"),
+                QUERY_ROLLUP_UPSERT.formatted("rollup_hour", "metric_rollups_1h", "hour"),
+                QUERY_ROLLUP_UPSERT.formatted("rollup_day", "metric_rollups_1d", "day"));
+
+    private static final int MAX_IN_FLIGHT_FLUSHES = 4;
+
+    private static final long REPLAY_INTERVAL_MS = 1_000;
+
+    private final Vertx vertx;
+
+    private final Pool client;
+
+    private final MetricsSpool spool;
+
+    private final int flushRows;
+
+    private final long flushInterval;
+
+    private List<JsonObject> buffer = new ArrayList<>();
+
+    private long flushTimerId = -1;
+
+    private int inFlightFlushes;
+
+    // Spool operations run one at a time in the order they were queued
+    private Future<Void> spoolQueue = Future.succeededFuture();
+
+    private int queuedAppends;
+
+    private boolean replaying;
+
+    private long flushedRows;
+
+    private long failedFlushes;
+
+    MetricsWriter(Vertx vertx, Pool client, MetricsSpool spool, int flushRows, long flushInterval)
+    {
+        this.vertx = vertx;
+
+        this.client = client;
+
+        this.spool = spool;
+
+        this.flushRows = flushRows;
+
+        this.flushInterval = flushInterval;
+    }
+
+    Future<Void> start()
+    {
+        return vertx.executeBlocking(() ->
+                {
+                    spool.open();
+
+                    return null;
+                }, true)
+                .onSuccess(v -> vertx.setPeriodic(REPLAY_INTERVAL_MS, id -> replay()))
+                .mapEmpty();
+    }
+
+    JsonObject getStats()
+    {
+        return spool.getStats()
+                .put("buffered_rows", buffer.size())
+                .put("in_flight_flushes", inFlightFlushes)
+                .put("queued_appends", queuedAppends)
+                .put("flushed_rows", flushedRows)
+                .put("failed_flushes", failedFlushes);
+    }
+
+    void write(JsonObject deviceResult)
+    {
+        buffer.add(deviceResult);
+
+        if (buffer.size() >= flushRows)
+        {
+            flush();
+        }
+        else if (flushTimerId == -1)
+        {
+            flushTimerId = vertx.setTimer(flushInterval, id ->
+            {
+                flushTimerId = -1;
+
+                flush();
+            });
+        }
+    }
+
+    private void flush()
+    {
+        if (flushTimerId != -1)
+        {
+            vertx.cancelTimer(flushTimerId);
+
+            flushTimerId = -1;
+        }
+
+        if (buffer.isEmpty())
+        {
+            return;
+        }
+
+        var rows = buffer;
+
+        buffer = new ArrayList<>();
+
+        // Rows queue up behind an existing backlog, or an append not yet on disk, to keep ingestion in order
+        if (replaying || queuedAppends > 0 || spool.getBacklogRecords() > 0 || inFlightFlushes >= MAX_IN_FLIGHT_FLUSHES)
+        {
+            spool(rows);
+
+            return;
+        }
+
+        inFlightFlushes++;
+
+        DatabasePool.withConnection(client, connection -> insert(connection, rows)).onComplete(result ->
+        {
+            inFlightFlushes--;
+
+            if (result.succeeded())
+            {
+                flushedRows += rows.size();
+            }
+            else
+            {
+                failedFlushes++;
+
+                logger.warn("Flush of {} polled results failed, spooling them: {}", rows.size(), result.cause().getMessage());
+
+                spool(rows);
+            }
+        });
+    }
+
+    private void spool(List<JsonObject> rows)
+    {
+        queuedAppends++;
+
+        enqueue(() -> vertx.executeBlocking(() ->
+                {
+                    spool.append(rows);
+
+                    return null;
+                }, true))
+                .onComplete(v -> queuedAppends--)
+                .onFailure(err -> logger.error("Spooling {} polled results failed, dropping them: {}", rows.size(), err.getMessage()));
+    }
+
+    private void replay()
+    {
+        if (replaying || spool.getBacklogRecords() == 0)
+        {
+            return;
+        }
+
+        replaying = true;
+
+        enqueue(() -> vertx.executeBlocking(() -> spool.peek(flushRows), true)
+                .compose(rows -> insertIsolating(rows)
+                        .compose(rejected -> vertx.executeBlocking(() ->
+                        {
+                            if (!rejected.isEmpty())
+                            {
+                                logger.error("Dead-lettering {} spooled results the database rejects", rejected.size());
+
+                                spool.deadLetter(rejected);
+                            }
+
+                            spool.commit();
+
+                            return rows.size() - rejected.size();
+                        }, true))))
+                .onComplete(result ->
+                {
+                    replaying = false;
+
+                    if (result.succeeded())
+                    {
+                        flushedRows += result.result();
+
+                        // Keep draining while the database keeps up; otherwise wait for the next tick
+                        replay();
+                    }
+                    else
+                    {
+                        logger.warn("Spool replay failed, retrying later: {}", result.cause().getMessage());
+                    }
+                });
+    }
+
+    private <T> Future<T> enqueue(Supplier<Future<T>> operation)
+    {
+        var result = spoolQueue.transform(v -> operation.get());
+
+        spoolQueue = result.transform(v -> Future.succeededFuture());
+
+        return result;
+    }
+
+    // Inserts rows and resolves to the records the database refuses for their content, splitting the
+    // batch until each of those is on its own. Fails on anything that is not the records' fault
+    private Future<List<JsonObject>> insertIsolating(List<JsonObject> rows)
+    {
+        return DatabasePool.withConnection(client, connection -> insert(connection, rows))
+                .<List<JsonObject>>map(v -> List.of())
+                .recover(err ->
+                {
+                    if (!isPermanent(err))
+                    {
+                        return Future.failedFuture(err);
+                    }
+
+                    if (rows.size() == 1)
+                    {
+                        logger.warn("Spooled result for job {} rejected: {}", rows.get(0).getValue(Constants.ID), err.getMessage());
+
+                        return Future.succeededFuture(rows);
+                    }
+
+                    var middle = rows.size() / 2;
+
+                    return insertIsolating(rows.subList(0, middle))
+                            .compose(first -> insertIsolating(rows.subList(middle, rows.size())).map(second ->
+                            {
+                                var rejected = new ArrayList<>(first);
+
+                                rejected.addAll(second);
+
+                                return rejected;
+                            }));
+                });
+    }
+
+    // Data exceptions and integrity violations fail the same records however often they are retried
+    private static boolean isPermanent(Throwable failure)
+    {
+        if (failure instanceof PgException exception)
+        {
+            var state = exception.getSqlState();
+
+            return state != null && (state.startsWith("22") || state.startsWith("23"));
+        }
+
+        // insert() could not even bind the record
+        return failure instanceof ClassCastException || failure instanceof DecodeException;
+    }
+
+    public static Future<Void> insert(SqlClient client, List<JsonObject> rows)
+    {
+        if (rows.isEmpty())
+        {
+            return Future.succeededFuture();
+        }
+
+        var jobIds = new Integer[rows.size()];
+
+        var data = new String[rows.size()];
+
+        var polledAt = new String[rows.size()];
+
+        for (int i = 0; i < rows.size(); i++)
+        {
+            var row = rows.get(i);
+
+            jobIds[i] = row.getInteger(Constants.ID);
+
+            data[i] = row.getJsonObject(Constants.DATA, new JsonObject()).encode();
+
+            polledAt[i] = row.getString(Constants.POLLED_AT);
+        }
+
+        return client.preparedQuery(QUERY_BULK_INSERT)
+                .execute(Tuple.tuple().addArrayOfInteger(jobIds).addArrayOfString(data).addArrayOfString(polledAt))
+                .mapEmpty();
+    }
+}
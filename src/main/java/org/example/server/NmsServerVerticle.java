@@ -70,13 +70,13 @@ public class NmsServerVerticle extends AbstractVerticle
 
         mainRouter.route("/api/discovery/*").subRouter(discoveryRouter.getRouter());
 
-        var provisioningRouter = new ProvisioningRouter(vertx);
+        var provisioningRouter = new ProvisioningRouter(vertx, config());
 
         mainRouter.route("/api/provision/*").subRouter(provisioningRouter.getRouter());
 
         vertx.createHttpServer()
                 .requestHandler(mainRouter)
-                .listen(8080, result ->
+                .listen(config().getInteger(Constants.CONFIG_HTTP_PORT, Constants.DEFAULT_HTTP_PORT), result ->
                 {
                     if (result.succeeded())
                     {
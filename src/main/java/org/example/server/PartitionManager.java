@@ -0,0 +1,187 @@
+package org.example.server;
+
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Pool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Keeps the range partitions of a time-partitioned table in shape: partitions for the current period
+ * and the next few always exist before rows for them arrive, and partitions entirely older than the
+ * retention window are dropped as a whole instead of deleting rows one by one. provisioned_data is
+ * partitioned by UTC day, the rollup tables by day, month or year depending on their resolution.
+ * A partition is named after the UTC date its range starts on, e.g. provisioned_data_p20260101.
+ *
+ * Rows outside every partition land in the table's default partition. A partition is therefore
+ * created detached, filled with its range's rows moved out of the default partition and only then
+ * attached, since Postgres refuses to add a partition whose range the default partition still holds
+ * rows for. Expired rows of the default partition are deleted; it only ever holds stragglers.
+ */
+class PartitionManager
+{
+    private static final Logger logger = LoggerFactory.getLogger(PartitionManager.class);
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String QUERY_CREATE_PARTITION = """
+            DO $$
+            BEGIN
+                IF to_regclass('%1$s') IS NULL THEN
+                    CREATE TABLE %1$s (LIKE %2$s INCLUDING DEFAULTS INCLUDING CONSTRAINTS);
+
+                    WITH moved AS (
+                        DELETE FROM %3$s
+                        WHERE %4$s >= '%5$s 00:00:00+00' AND %4$s < '%6$s 00:00:00+00'
+                        RETURNING *
+                    )
+                    INSERT INTO %1$s SELECT * FROM moved;
+
+                    ALTER TABLE %2$s ATTACH PARTITION %1$s
+                    FOR VALUES FROM ('%5$s 00:00:00+00') TO ('%6$s 00:00:00+00');
+                END IF;
+            END $$;
+        """;
+
+    private static final String QUERY_PURGE_DEFAULT_PARTITION = """
+            DELETE FROM %s WHERE %s < '%s 00:00:00+00'
+        """;
+
+    private static final String QUERY_LIST_PARTITIONS = """
+            SELECT child.relname AS name
+            FROM pg_inherits
+            JOIN pg_class parent ON parent.oid = pg_inherits.inhparent
+            JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+            WHERE parent.relname = '%s'
+        """;
+
+    private final Pool client;
+
+    private final String parentTable;
+
+    private final String column;
+
+    private final ChronoUnit period;
+
+    private final String partitionPrefix;
+
+    private final String defaultPartition;
+
+    private final int premakePeriods;
+
+    private final int retentionDays;
+
+    PartitionManager(Pool client, String parentTable, String column, ChronoUnit period, int premakePeriods, int retentionDays)
+    {
+        this.client = client;
+
+        this.parentTable = parentTable;
+
+        this.column = column;
+
+        this.period = period;
+
+        this.partitionPrefix = parentTable + "_p";
+
+        this.defaultPartition = parentTable + "_default";
+
+        this.premakePeriods = premakePeriods;
+
+        this.retentionDays = retentionDays;
+    }
+
+    Future<Void> maintain()
+    {
+        var today = LocalDate.now(ZoneOffset.UTC);
+
+        return createPartitions(periodStart(today), 0).compose(v -> dropExpiredPartitions(today));
+    }
+
+    private LocalDate periodStart(LocalDate day)
+    {
+        return switch (period)
+        {
+            case MONTHS -> day.withDayOfMonth(1);
+
+            case YEARS -> day.withDayOfYear(1);
+
+            default -> day;
+        };
+    }
+
+    private Future<Void> createPartitions(LocalDate current, int offset)
+    {
+        if (offset > premakePeriods)
+        {
+            return Future.succeededFuture();
+        }
+
+        var start = current.plus(offset, period);
+
+        var query = QUERY_CREATE_PARTITION.formatted(partitionPrefix + PARTITION_SUFFIX.format(start),
+                parentTable, defaultPartition, column, start, start.plus(1, period));
+
+        return client.query(query).execute()
+                .compose(v -> createPartitions(current, offset + 1));
+    }
+
+    private Future<Void> dropExpiredPartitions(LocalDate today)
+    {
+        var cutoff = today.minusDays(retentionDays);
+
+        return client.query(QUERY_LIST_PARTITIONS.formatted(parentTable)).execute()
+                .compose(rows ->
+                {
+                    var expired = new ArrayList<String>();
+
+                    rows.forEach(row ->
+                    {
+                        var name = row.getString("name");
+
+                        if (name.equals(defaultPartition))
+                        {
+                            return;
+                        }
+
+                        try
+                        {
+                            // A partition holds one period, so it is expired once its upper bound is past the cutoff
+                            var start = LocalDate.parse(name.substring(partitionPrefix.length()), PARTITION_SUFFIX);
+
+                            if (!start.plus(1, period).isAfter(cutoff))
+                            {
+                                expired.add(name);
+                            }
+                        }
+                        catch (IndexOutOfBoundsException | DateTimeParseException exception)
+                        {
+                            logger.warn("Skipping partition {} with unexpected name", name);
+                        }
+                    });
+
+                    return dropPartitions(expired, 0);
+                })
+                .compose(v -> client.query(QUERY_PURGE_DEFAULT_PARTITION.formatted(defaultPartition, column, cutoff)).execute())
+                .mapEmpty();
+    }
+
+    private Future<Void> dropPartitions(List<String> partitions, int index)
+    {
+        if (index >= partitions.size())
+        {
+            return Future.succeededFuture();
+        }
+
+        logger.info("Dropping expired partition {}", partitions.get(index));
+
+        return client.query("DROP TABLE IF EXISTS " + partitions.get(index)).execute()
+                .compose(v -> dropPartitions(partitions, index + 1));
+    }
+}
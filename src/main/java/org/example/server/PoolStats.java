@@ -0,0 +1,92 @@
+package org.example.server;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters of the shared pool and the pipelined client. Every DBVerticle instance and every HTTP
+ * verticle updates them from its own event loop, so they are all atomics. Borrowed connections
+ * are counted by acquisition (waiting, in use, time to acquire), pipelined commands by command
+ * (in flight, time to complete), since a pipelined client never hands out a connection.
+ */
+class PoolStats
+{
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    private final LongAdder failedAcquisitions = new LongAdder();
+
+    private final LatencyHistogram acquisitions = new LatencyHistogram();
+
+    private final AtomicInteger commandsInFlight = new AtomicInteger();
+
+    private final LongAdder failedCommands = new LongAdder();
+
+    private final LatencyHistogram commands = new LatencyHistogram();
+
+    void requested()
+    {
+        waiting.incrementAndGet();
+    }
+
+    void acquired(long nanos)
+    {
+        waiting.decrementAndGet();
+
+        inUse.incrementAndGet();
+
+        acquisitions.record(nanos);
+    }
+
+    void failed()
+    {
+        waiting.decrementAndGet();
+
+        failedAcquisitions.increment();
+    }
+
+    void released()
+    {
+        inUse.decrementAndGet();
+    }
+
+    void commandSent()
+    {
+        commandsInFlight.incrementAndGet();
+    }
+
+    void commandCompleted(long nanos, boolean succeeded)
+    {
+        commandsInFlight.decrementAndGet();
+
+        commands.record(nanos);
+
+        if (!succeeded)
+        {
+            failedCommands.increment();
+        }
+    }
+
+    JsonObject toJson()
+    {
+        return new JsonObject()
+                .put("in_use", inUse.get())
+                .put("waiting", waiting.get())
+                .put("acquisitions", acquisitions.count())
+                .put("failed_acquisitions", failedAcquisitions.sum())
+                .put("acquisition_mean_ms", acquisitions.meanMillis())
+                .put("acquisition_p50_ms", acquisitions.percentileMillis(0.50))
+                .put("acquisition_p99_ms", acquisitions.percentileMillis(0.99))
+                .put("acquisition_max_ms", acquisitions.maxMillis())
+                .put("pipelined_in_flight", commandsInFlight.get())
+                .put("pipelined_commands", commands.count())
+                .put("pipelined_failed_commands", failedCommands.sum())
+                .put("pipelined_mean_ms", commands.meanMillis())
+                .put("pipelined_p50_ms", commands.percentileMillis(0.50))
+                .put("pipelined_p99_ms", commands.percentileMillis(0.99))
+                .put("pipelined_max_ms", commands.maxMillis());
+    }
+}
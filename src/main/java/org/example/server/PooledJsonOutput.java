@@ -0,0 +1,132 @@
+package org.example.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/*
+ * Compact JSON generated straight into pooled Netty buffers, which the HTTP response then writes
+ * from without another copy. writeTo hands the bytes generated so far to the response as one
+ * chunk and carries on in a fresh buffer, so a long stream never holds more than a chunk; every
+ * handed-over buffer goes back to the pool once the response has written it. A buffer that is
+ * never handed over must be given back with release().
+ */
+public class PooledJsonOutput extends OutputStream
+{
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final JsonGenerator generator;
+
+    private ByteBuf buffer = allocate();
+
+    public PooledJsonOutput()
+    {
+        try
+        {
+            generator = FACTORY.createGenerator(this);
+        }
+        catch (IOException exception)
+        {
+            buffer.release();
+
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    public JsonGenerator getGenerator()
+    {
+        return generator;
+    }
+
+    // Bytes generated and not yet handed to the response
+    public int size()
+    {
+        flushGenerator();
+
+        return buffer.readableBytes();
+    }
+
+    public Future<Void> writeTo(HttpServerResponse response)
+    {
+        flushGenerator();
+
+        var chunk = buffer;
+
+        buffer = allocate();
+
+        return response.write(wrap(chunk)).onComplete(v -> chunk.release());
+    }
+
+    public Future<Void> endTo(HttpServerResponse response)
+    {
+        flushGenerator();
+
+        var chunk = buffer;
+
+        buffer = null;
+
+        return response.end(wrap(chunk)).onComplete(v -> chunk.release());
+    }
+
+    public void release()
+    {
+        if (buffer != null)
+        {
+            buffer.release();
+
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void write(int b)
+    {
+        buffer.writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length)
+    {
+        buffer.writeBytes(bytes, offset, length);
+    }
+
+    // The generator closes its target when it is closed; the buffer outlives it
+    @Override
+    public void close()
+    {
+    }
+
+    private void flushGenerator()
+    {
+        try
+        {
+            generator.flush();
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    // Deprecated in 4.5 only in favour of internal API; it is the public way to wrap without a copy
+    @SuppressWarnings("deprecation")
+    private static Buffer wrap(ByteBuf chunk)
+    {
+        return Buffer.buffer(chunk);
+    }
+
+    private static ByteBuf allocate()
+    {
+        return PooledByteBufAllocator.DEFAULT.directBuffer(INITIAL_CAPACITY);
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.server;
+
+import io.vertx.sqlclient.Tuple;
+
+/*
+ * Typed request for DBVerticle: the SQL and its bound parameters. Sent with LocalCodec, so the
+ * object itself is handed to the consumer instead of being copied as JSON.
+ */
+public class QueryCommand
+{
+    private final String sql;
+
+    private final Tuple params;
+
+    public QueryCommand(String sql, Tuple params)
+    {
+        this.sql = sql;
+
+        this.params = params;
+    }
+
+    public String getSql()
+    {
+        return sql;
+    }
+
+    public Tuple getParams()
+    {
+        return params;
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/*
+ * Typed reply of DBVerticle to a QueryCommand: the RowSet as the client returned it. Rows are
+ * only turned into JSON by whoever needs JSON, once, with the column names resolved once per
+ * result set rather than once per cell. writeJson streams them onto a generator instead, for
+ * responses that never need the rows as objects.
+ */
+public class QueryResult
+{
+    private final RowSet<Row> rows;
+
+    public QueryResult(RowSet<Row> rows)
+    {
+        this.rows = rows;
+    }
+
+    public RowSet<Row> getRows()
+    {
+        return rows;
+    }
+
+    public int size()
+    {
+        return rows.size();
+    }
+
+    public JsonArray toJsonArray()
+    {
+        var columns = rows.columnsNames().toArray(new String[0]);
+
+        var array = new JsonArray(new ArrayList<>(rows.size()));
+
+        for (var row : rows)
+        {
+            var object = new JsonObject(new LinkedHashMap<>(columns.length * 2));
+
+            for (int i = 0; i < columns.length; i++)
+            {
+                var value = row.getValue(i);
+
+                // Dates have no JSON type of their own
+                object.put(columns[i], value instanceof Temporal ? value.toString() : value);
+            }
+
+            array.add(object);
+        }
+
+        return array;
+    }
+
+    public void writeJson(JsonGenerator generator)
+    {
+        new RowJsonWriter(rows.columnsNames()).writeRows(rows, generator);
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+import io.vertx.sqlclient.data.Numeric;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.Temporal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/*
+ * Writes rows as JSON objects straight onto a JsonGenerator, without building a JsonObject per
+ * row. Column names are resolved and quoted once per result set; each cell is then one field name
+ * copy and one value write. Values come out as toJsonArray() would produce them: dates as their
+ * ISO strings, jsonb as nested JSON, anything else the way Vert.x encodes it.
+ */
+public class RowJsonWriter
+{
+    private final SerializedString[] fields;
+
+    public RowJsonWriter(List<String> columns)
+    {
+        fields = new SerializedString[columns.size()];
+
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i] = new SerializedString(columns.get(i));
+        }
+    }
+
+    // A RowStream has no metadata before its first row
+    public static RowJsonWriter forRow(Row row)
+    {
+        return new RowJsonWriter(IntStream.range(0, row.size()).mapToObj(row::getColumnName).toList());
+    }
+
+    public void writeRows(RowSet<Row> rows, JsonGenerator generator)
+    {
+        try
+        {
+            generator.writeStartArray();
+
+            for (var row : rows)
+            {
+                writeRow(row, generator);
+            }
+
+            generator.writeEndArray();
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    public void writeRow(Row row, JsonGenerator generator)
+    {
+        try
+        {
+            generator.writeStartObject();
+
+            for (int i = 0; i < fields.length; i++)
+            {
+                generator.writeFieldName(fields[i]);
+
+                writeValue(row.getValue(i), generator);
+            }
+
+            generator.writeEndObject();
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    public static void writeValue(Object value, JsonGenerator generator) throws IOException
+    {
+        if (value == null || value == Tuple.JSON_NULL)
+        {
+            generator.writeNull();
+        }
+        else if (value instanceof String string)
+        {
+            generator.writeString(string);
+        }
+        else if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            generator.writeNumber(((Number) value).intValue());
+        }
+        else if (value instanceof Long number)
+        {
+            generator.writeNumber(number);
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            generator.writeNumber(((Number) value).doubleValue());
+        }
+        else if (value instanceof BigDecimal number)
+        {
+            generator.writeNumber(number);
+        }
+        else if (value instanceof BigInteger number)
+        {
+            generator.writeNumber(number);
+        }
+        else if (value instanceof Numeric number)
+        {
+            if (number.isNaN())
+            {
+                generator.writeString("NaN");
+            }
+            else
+            {
+                generator.writeNumber(number.bigDecimalValue());
+            }
+        }
+        else if (value instanceof Boolean bool)
+        {
+            generator.writeBoolean(bool);
+        }
+        else if (value instanceof Temporal)
+        {
+            // Dates have no JSON type of their own
+            generator.writeString(value.toString());
+        }
+        else if (value instanceof JsonObject object)
+        {
+            writeMap(object.getMap(), generator);
+        }
+        else if (value instanceof Map<?, ?> map)
+        {
+            writeMap(map, generator);
+        }
+        else if (value instanceof JsonArray array)
+        {
+            writeList(array.getList(), generator);
+        }
+        else if (value instanceof List<?> list)
+        {
+            writeList(list, generator);
+        }
+        else if (value instanceof Object[] array)
+        {
+            writeList(Arrays.asList(array), generator);
+        }
+        else
+        {
+            generator.writeRawValue(Json.encode(value));
+        }
+    }
+
+    private static void writeMap(Map<?, ?> map, JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+
+        for (var entry : map.entrySet())
+        {
+            generator.writeFieldName(String.valueOf(entry.getKey()));
+
+            writeValue(entry.getValue(), generator);
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static void writeList(List<?> list, JsonGenerator generator) throws IOException
+    {
+        generator.writeStartArray();
+
+        for (var element : list)
+        {
+            writeValue(element, generator);
+        }
+
+        generator.writeEndArray();
+    }
+}
@@ -1,16 +1,21 @@
 package org.example.service;
 
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
+import org.example.server.PooledJsonOutput;
+import org.example.server.QueryResult;
 import org.example.utils.Constants;
 import org.example.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.stream.Collectors;
 
 public class DBService
 {
@@ -18,6 +23,8 @@ public class DBService
 
     private final EventBus eventBus;
 
+    private final DataAccess dataAccess;
+
     private static final Logger logger = LoggerFactory.getLogger(DBService.class);
 
     private static final JsonObject formattedRequestBody = new JsonObject();
@@ -27,6 +34,8 @@ public class DBService
         this.vertx = vertx;
 
         this.eventBus = vertx.eventBus();
+
+        this.dataAccess = DataAccess.forContext(vertx);
     }
 
     public void create(JsonObject requestBody, RoutingContext context)
@@ -74,6 +83,12 @@ public class DBService
     }
 
     public void delete(String id, RoutingContext context)
+    {
+        delete(id, context, () -> {});
+    }
+
+    // onDeleted runs only once the row is gone, before the response is written
+    public void delete(String id, RoutingContext context, Runnable onDeleted)
     {
         formattedRequestBody.clear();
 
@@ -81,10 +96,10 @@ public class DBService
                 .put(Constants.TABLE_NAME, Utils.getTableNameFromContext(context))
                 .put(Constants.CONDITIONS , new JsonObject().put(Constants.ID, Integer.parseInt(id)));
 
-        sendToQueryBuilder(formattedRequestBody, context);
+        sendToQueryBuilder(formattedRequestBody, context, onDeleted);
     }
 
-    public void addForProvision(String id, RoutingContext context)
+    public void addForProvision(String id, int pollingInterval, RoutingContext context)
     {
         formattedRequestBody.clear();
 
@@ -92,119 +107,70 @@ public class DBService
                 .put(Constants.TABLE_NAME, "discovery_profiles")
                 .put(Constants.CONDITIONS , new JsonObject().put(Constants.ID, Integer.parseInt(id)));
 
-        // Send the request to the query builder
-        eventBus.request(Constants.EVENTBUS_QUERYBUILDER_ADDRESS, formattedRequestBody,reply ->
+        dataAccess.execute(formattedRequestBody).onComplete(reply ->
         {
-            if(reply.succeeded())
+            if (reply.failed())
             {
-                //send query to database for execution
-                eventBus.request(Constants.EVENTBUS_DATABASE_ADDRESS, reply.result().body(),dbReply ->
-                {
-                    if (dbReply.succeeded())
-                    {
-                        var result = (JsonObject) dbReply.result().body();
-
-                        if (!result.getBoolean(Constants.SUCCESS, false))
-                        {
-                            context.response()
-                                    .setStatusCode(500)
-                                    .end(new JsonObject().put(Constants.ERROR, result.getString(Constants.ERROR)).encodePrettily());
-
-                            return;
-                        }
-
-                        var rows = result.getJsonArray(Constants.DATA);
-
-                        if (rows == null || rows.isEmpty())
-                        {
-                            context.response()
-                                    .setStatusCode(404)
-                                    .end(new JsonObject().put(Constants.ERROR, "Discovery profile not found").encodePrettily());
-
-                            return;
-                        }
+                context.response()
+                        .setStatusCode(500)
+                        .end(new JsonObject().put(Constants.ERROR, "DBService failed: " + reply.cause().getMessage()).encodePrettily());
 
-                        var discoveryProfile = rows.getJsonObject(0);
+                return;
+            }
 
-                        var isDiscovered = discoveryProfile.getBoolean("status", false);
+            var rows = reply.result().toJsonArray();
 
-                        if (!isDiscovered)
-                        {
-                            context.response()
-                                    .setStatusCode(400)
-                                    .end(new JsonObject().put(Constants.ERROR, "Device is not discovered yet").encodePrettily());
+            if (rows.isEmpty())
+            {
+                context.response()
+                        .setStatusCode(404)
+                        .end(new JsonObject().put(Constants.ERROR, "Discovery profile not found").encodePrettily());
 
-                            return;
-                        }
+                return;
+            }
 
-                        formattedRequestBody.clear();
+            var discoveryProfile = rows.getJsonObject(0);
 
-                        formattedRequestBody.put(Constants.OPERATION, Constants.DB_INSERT)
-                                .put(Constants.TABLE_NAME, Utils.getTableNameFromContext(context))
-                                .put(Constants.DATA, new JsonObject()
-                                        .put(Constants.IP, discoveryProfile.getString(Constants.IP))
-                                        .put(Constants.PORT, discoveryProfile.getInteger(Constants.PORT))
-                                        .put(Constants.CREDENTIAL_PROFILE_ID, discoveryProfile.getInteger(Constants.CREDENTIAL_PROFILE_ID)));
+            var isDiscovered = discoveryProfile.getBoolean("status", false);
 
-                        sendToQueryBuilder(formattedRequestBody, context);
-                    }
-                    else
-                    {
-                        context.response()
-                                .setStatusCode(500)
-                                .end(new JsonObject().put(Constants.ERROR, "DBService failed: " + reply.cause().getMessage()).encodePrettily());
-                    }
-                });
-            }
-            else
+            if (!isDiscovered)
             {
                 context.response()
-                        .setStatusCode(500)
-                        .end(new JsonObject().put(Constants.ERROR, "DBService failed: " + reply.cause().getMessage()).encodePrettily());
+                        .setStatusCode(400)
+                        .end(new JsonObject().put(Constants.ERROR, "Device is not discovered yet").encodePrettily());
 
+                return;
             }
+
+            formattedRequestBody.clear();
+
+            formattedRequestBody.put(Constants.OPERATION, Constants.DB_INSERT)
+                    .put(Constants.TABLE_NAME, Utils.getTableNameFromContext(context))
+                    .put(Constants.DATA, new JsonObject()
+                            .put(Constants.IP, discoveryProfile.getString(Constants.IP))
+                            .put(Constants.PORT, discoveryProfile.getInteger(Constants.PORT))
+                            .put(Constants.CREDENTIAL_PROFILE_ID, discoveryProfile.getInteger(Constants.CREDENTIAL_PROFILE_ID))
+                            .put(Constants.POLLING_INTERVAL, pollingInterval));
+
+            sendToQueryBuilder(formattedRequestBody, context);
         });
     }
 
+    // Builds and runs the request through the configured data access mode (in-process by default)
     public void sendToQueryBuilder(JsonObject formattedRequest, RoutingContext context)
     {
-        eventBus.request(Constants.EVENTBUS_QUERYBUILDER_ADDRESS, formattedRequest,reply ->
-        {
-            if(reply.succeeded())
-            {
-                executeQuery((JsonObject) reply.result().body() , context);
-            }
-            else
-            {
-                context.response()
-                        .setStatusCode(500)
-                        .end(new JsonObject().put(Constants.ERROR, "DBService failed: " + reply.cause().getMessage()).encodePrettily());
-
-            }
-        });
+        sendToQueryBuilder(formattedRequest, context, () -> {});
     }
-    public void executeQuery(JsonObject query, RoutingContext context)
-    {
-        eventBus.request(Constants.EVENTBUS_DATABASE_ADDRESS, query, ar -> {
 
+    private void sendToQueryBuilder(JsonObject formattedRequest, RoutingContext context, Runnable onSuccess)
+    {
+        dataAccess.execute(formattedRequest).onComplete(ar ->
+        {
             if (ar.succeeded())
             {
-                var result = (JsonObject) ar.result().body();
+                onSuccess.run();
 
-                if (result.getBoolean(Constants.SUCCESS, false))
-                {
-                    context.response()
-                            .setStatusCode(201)
-                            .end(result.encodePrettily());
-                }
-                else
-                {
-                    context.response()
-                            .setStatusCode(500)
-                            .end(new JsonObject()
-                                    .put(Constants.ERROR, result.getString(Constants.ERROR))
-                                    .encodePrettily());
-                }
+                respondRows(ar.result(), context);
             }
             else
             {
@@ -217,147 +183,139 @@ public class DBService
         });
     }
 
-    public void runDiscovery(JsonArray ids, RoutingContext ctx) {
-
-        var placeholders = Utils.buildPlaceholders(ids.size());
-
-        var fetchQuery = "SELECT dp.id, dp.ip, dp.port, cp.credentials FROM discovery_profiles dp " +
-                "JOIN credential_profiles cp ON dp.credential_profile_id = cp.id " +
-                "WHERE dp.id IN (" + placeholders + ")";
-
-        var request = new JsonObject()
-                .put(Constants.QUERY, fetchQuery)
-                .put(Constants.PARAMS, ids);
+    // {"success": true, "data": [rows]} as compact JSON, written from the RowSet into a pooled buffer
+    private void respondRows(QueryResult result, RoutingContext context)
+    {
+        var output = new PooledJsonOutput();
 
-        eventBus.request(Constants.EVENTBUS_DATABASE_ADDRESS, request, dbRes ->
+        try
         {
-            if (dbRes.failed())
-            {
-                ctx.response().setStatusCode(500).end("DB query failed");
-
-                return;
-            }
-
-            vertx.executeBlocking(promise ->
-            {
-                var resBody = (JsonObject) dbRes.result().body();
-
-                if (!resBody.getBoolean("success") || resBody.getJsonArray(Constants.DATA).isEmpty())
-                {
-                    promise.fail("No discovery data found");
-
-                    return;
-                }
+            var generator = output.getGenerator();
 
-                var deviceData = resBody.getJsonArray(Constants.DATA);
+            generator.writeStartObject();
 
-                logger.info("Processing fping of : {}", deviceData);
+            generator.writeBooleanField(Constants.SUCCESS, true);
 
-                var responseArray = new JsonArray();
-
-                for (int i = 0; i < deviceData.size(); i++)
-                {
-                    responseArray.add(new JsonObject()
-                            .put(Constants.ID, deviceData.getJsonObject(i).getInteger(Constants.ID))
-                            .put("success", false)
-                            .put("reason", "ping failed"));
-                }
+            generator.writeFieldName(Constants.DATA);
 
-                var aliveDevices = Utils.runFping(deviceData);
+            result.writeJson(generator);
 
-                if (aliveDevices.isEmpty())
-                {
-                    promise.complete(responseArray);
-
-                    return;
-                }
+            generator.writeEndObject();
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            output.release();
 
-                logger.info("Processing SSH discovery of : {}", aliveDevices);
+            logger.error("Serializing {} rows failed: {}", result.size(), exception.getMessage());
 
-                var sshOutput = Utils.runGoPlugin(aliveDevices, Constants.DISCOVERY);
+            context.response()
+                    .setStatusCode(500)
+                    .end(new JsonObject().put(Constants.ERROR, "DBService failed: " + exception.getMessage()).encodePrettily());
 
-                if (sshOutput.isEmpty())
-                {
-                    logger.error("Go plugin execution failed");
+            return;
+        }
 
-                    promise.complete(responseArray);
+        context.response().setStatusCode(201).putHeader("Content-Type", "application/json");
 
-                    return;
-                }
+        output.endTo(context.response());
+    }
 
-                logger.info("Discovery Process Completed");
+    // Plan cache stats of whichever builder this service's requests go through
+    public void getQueryBuilderStats(RoutingContext context)
+    {
+        dataAccess.getBuilderStats().onComplete(ar ->
+        {
+            if (ar.succeeded())
+            {
+                context.json(ar.result());
+            }
+            else
+            {
+                context.response()
+                        .setStatusCode(503)
+                        .end(new JsonObject().put(Constants.ERROR, "Stats unavailable: " + ar.cause().getMessage()).encodePrettily());
+            }
+        });
+    }
 
-                var sshDiscoveredDevices = new JsonArray(sshOutput);
+    // Last stored sample of each job, for jobs polled by another node and so missing from this
+    // node's latest-sample cache. Rows have the cached samples' id, data and polled_at fields
+    public Future<JsonArray> getLatestSamples(JsonArray ids)
+    {
+        if (ids.isEmpty())
+        {
+            return Future.succeededFuture(new JsonArray());
+        }
 
-                logger.info(sshDiscoveredDevices.toString());
+        var query = """
+                SELECT DISTINCT ON (job_id) job_id AS id, data, polled_at
+                FROM provisioned_data
+                WHERE job_id = ANY(string_to_array($1, ',')::int[])
+                ORDER BY job_id, polled_at DESC
+                """;
 
-                // Create map of id -> result from plugin
-                var resultMap = new HashMap<Integer, JsonObject>();
+        var request = new JsonObject()
+                .put(Constants.QUERY, query)
+                .put(Constants.PARAMS, new JsonArray().add(ids.stream().map(String::valueOf).collect(Collectors.joining(","))));
 
-                for (int i = 0; i < sshDiscoveredDevices.size(); i++)
+        return eventBus.<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, request)
+                .compose(reply ->
                 {
-                    var obj = sshDiscoveredDevices.getJsonObject(i);
-
-                    resultMap.put(obj.getInteger(Constants.ID), obj);
-                }
+                    var result = reply.body();
 
-                var batchParams = new JsonArray();
+                    if (!result.getBoolean(Constants.SUCCESS, false))
+                    {
+                        return Future.failedFuture(result.getString(Constants.ERROR));
+                    }
 
-                // Update the response array in-place
-                for (int i = 0; i < responseArray.size(); i++)
-                {
-                    var response = responseArray.getJsonObject(i);
+                    return Future.succeededFuture(result.getJsonArray(Constants.DATA));
+                });
+    }
 
-                    var id = response.getInteger(Constants.ID);
+    public void getRollups(int jobId, String metric, OffsetDateTime from, OffsetDateTime to, int maxPoints, RoutingContext context)
+    {
+        var resolution = RollupResolution.select(from.toInstant(), to.toInstant(), maxPoints, vertx.getOrCreateContext().config());
 
-                    if (resultMap.containsKey(id))
-                    {
-                        var pluginResult = resultMap.get(id);
+        // A bucket is stamped with its start, so the one from falls into starts before from
+        var firstBucket = resolution.alignDown(from.toInstant());
 
-                        boolean success = pluginResult.getBoolean("success");
+        var query = """
+                SELECT metric, (extract(epoch FROM bucket) * 1000)::bigint AS timestamp,
+                       min_value AS min, max_value AS max, sum_value / sample_count AS avg, sample_count AS count
+                FROM %s
+                WHERE job_id = $1 AND ($2::text IS NULL OR metric = $2) AND bucket >= $3::timestamptz AND bucket < $4::timestamptz
+                ORDER BY metric, bucket
+                """.formatted(resolution.getTable());
 
-                        var step = pluginResult.getString("step");
+        var request = new JsonObject()
+                .put(Constants.QUERY, query)
+                .put(Constants.PARAMS, new JsonArray().add(jobId).add(metric).add(firstBucket.toString()).add(to.toString()));
 
-                        response.put("success", success);
-                        response.put("reason", step);
-                    }
+        eventBus.<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, request, reply ->
+        {
+            if (reply.failed())
+            {
+                context.response()
+                        .setStatusCode(500)
+                        .end(new JsonObject().put(Constants.ERROR, "DBService failed: " + reply.cause().getMessage()).encodePrettily());
 
-                    batchParams.add(new JsonArray()
-                            .add(response.getBoolean("success"))
-                            .add(id));
-                }
+                return;
+            }
 
-                // Prepare batch update
-                var updateRequest = new JsonObject()
-                        .put(Constants.QUERY, "UPDATE discovery_profiles SET status = $1 WHERE id = $2")
-                        .put(Constants.PARAMS, batchParams);
+            var result = reply.result().body();
 
-                // Send update to batch consumer
-                eventBus.request(Constants.EVENTBUS_DATABASE_ADDRESS, updateRequest, updateRes ->
-                {
-                    var jsonResponse = (JsonObject) updateRes.result().body();
+            if (!result.getBoolean(Constants.SUCCESS, false))
+            {
+                context.response()
+                        .setStatusCode(500)
+                        .end(new JsonObject().put(Constants.ERROR, result.getString(Constants.ERROR)).encodePrettily());
 
-                    if (jsonResponse.getBoolean("success", false))
-                    {
-                        promise.complete(responseArray);
-                    }
-                    else
-                    {
-                        promise.fail(jsonResponse.getString("error"));
-                    }
-                });
+                return;
+            }
 
-            }, false, result ->
-            {
-                if (result.failed())
-                {
-                    ctx.response().setStatusCode(404).end(result.cause().getMessage());
-                }
-                else
-                {
-                    ctx.json(result.result());
-                }
-            });
+            context.json(new JsonObject()
+                    .put("resolution", resolution.getLabel())
+                    .put(Constants.DATA, result.getJsonArray(Constants.DATA)));
         });
     }
 }
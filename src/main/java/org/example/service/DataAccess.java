@@ -0,0 +1,58 @@
+package org.example.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.example.server.QueryCommand;
+import org.example.server.QueryResult;
+import org.example.utils.Constants;
+
+/*
+ * Data access for request handlers. The default "local" mode builds the query in-process and
+ * runs it on the shared pool, so a call costs no event-bus hop; "eventbus" mode sends it through
+ * QueryBuilderVerticle and DBVerticle, for deployments where those run elsewhere.
+ *
+ * One instance is kept per verticle context, so every router of a verticle shares its plan cache
+ * and it is only ever touched from that verticle's event loop.
+ */
+public interface DataAccess
+{
+    String CONTEXT_KEY = "nms.data.access";
+
+    // CRUD request in query builder form: {"operation", "tableName", "data", "conditions", "columns"}
+    Future<QueryResult> execute(JsonObject request);
+
+    Future<QueryResult> query(QueryCommand command);
+
+    Future<JsonObject> getBuilderStats();
+
+    static DataAccess forContext(Vertx vertx)
+    {
+        var context = vertx.getOrCreateContext();
+
+        DataAccess dataAccess = context.get(CONTEXT_KEY);
+
+        if (dataAccess == null)
+        {
+            dataAccess = create(vertx, context.config());
+
+            context.put(CONTEXT_KEY, dataAccess);
+        }
+
+        return dataAccess;
+    }
+
+    static DataAccess create(Vertx vertx, JsonObject config)
+    {
+        var mode = config.getString(Constants.CONFIG_DATA_ACCESS_MODE, Constants.DATA_ACCESS_LOCAL);
+
+        return switch (mode)
+        {
+            case Constants.DATA_ACCESS_LOCAL -> new LocalDataAccess(vertx, config);
+
+            case Constants.DATA_ACCESS_EVENTBUS -> new EventBusDataAccess(vertx);
+
+            default -> throw new IllegalArgumentException("Unknown data access mode: " + mode);
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.service;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * State of one asynchronous discovery run: per-device results in arrival order, progress counters
+ * and the listeners (SSE streams) following it live. Only touched from the discovery service's context.
+ */
+class DiscoveryJob
+{
+    static final String RUNNING = "running";
+
+    static final String COMPLETED = "completed";
+
+    static final String FAILED = "failed";
+
+    interface Listener
+    {
+        void onResult(JsonObject result);
+
+        void onEnd(DiscoveryJob job);
+    }
+
+    private final String id;
+
+    private final long createdAt = System.currentTimeMillis();
+
+    private final JsonArray results = new JsonArray();
+
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private String status = RUNNING;
+
+    private String error;
+
+    private int total;
+
+    private int probed;
+
+    DiscoveryJob(String id)
+    {
+        this.id = id;
+    }
+
+    String getId()
+    {
+        return id;
+    }
+
+    JsonArray getResults()
+    {
+        return results;
+    }
+
+    boolean isRunning()
+    {
+        return RUNNING.equals(status);
+    }
+
+    void setTotal(int total)
+    {
+        this.total = total;
+    }
+
+    void addProbed(int count)
+    {
+        probed += count;
+    }
+
+    void addResult(JsonObject result)
+    {
+        results.add(result);
+
+        for (var listener : List.copyOf(listeners))
+        {
+            listener.onResult(result);
+        }
+    }
+
+    void finish(String status, String error)
+    {
+        this.status = status;
+
+        this.error = error;
+
+        for (var listener : List.copyOf(listeners))
+        {
+            listener.onEnd(this);
+        }
+
+        listeners.clear();
+    }
+
+    void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    JsonObject toJson()
+    {
+        return new JsonObject()
+                .put(Constants.JOB_ID, id)
+                .put(Constants.STATUS, status)
+                .put("created_at", createdAt)
+                .put("total", total)
+                .put("probed", probed)
+                .put("completed", results.size())
+                .put(Constants.ERROR, error);
+    }
+}
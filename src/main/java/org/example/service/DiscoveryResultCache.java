@@ -0,0 +1,85 @@
+package org.example.service;
+
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Recent discovery outcomes per (ip, port, credential profile), so repeated discovery of the
+ * same devices skips the reachability probe and SSH discovery. Successful outcomes are kept for
+ * positiveTtl and failures (unreachable or SSH discovery failed) for negativeTtl, which is kept
+ * short so a device that comes back is noticed soon. Expired entries are dropped on lookup and
+ * by purgeExpired. Only touched from the discovery service's context.
+ */
+class DiscoveryResultCache
+{
+    private record Entry(boolean success, String reason, long expiresAt)
+    {
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private final long positiveTtl;
+
+    private final long negativeTtl;
+
+    DiscoveryResultCache(long positiveTtl, long negativeTtl)
+    {
+        this.positiveTtl = positiveTtl;
+
+        this.negativeTtl = negativeTtl;
+    }
+
+    static String key(String ip, int port, Integer credentialProfileId)
+    {
+        return ip + ":" + port + ":" + credentialProfileId;
+    }
+
+    // Fills success and reason into the result and returns true on a live entry
+    boolean lookup(String key, JsonObject result)
+    {
+        var entry = entries.get(key);
+
+        if (entry == null)
+        {
+            return false;
+        }
+
+        if (entry.expiresAt <= System.currentTimeMillis())
+        {
+            entries.remove(key);
+
+            return false;
+        }
+
+        result.put(Constants.SUCCESS, entry.success)
+                .put(Constants.REASON, entry.reason)
+                .put(Constants.CACHED, true);
+
+        return true;
+    }
+
+    void put(String key, boolean success, String reason)
+    {
+        var ttl = success ? positiveTtl : negativeTtl;
+
+        if (ttl > 0)
+        {
+            entries.put(key, new Entry(success, reason, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    void purgeExpired()
+    {
+        var now = System.currentTimeMillis();
+
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+}
@@ -0,0 +1,714 @@
+package org.example.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import org.example.plugin.PluginWorkerPool;
+import org.example.reachability.IpRanges;
+import org.example.reachability.ReachabilityEngine;
+import org.example.utils.Constants;
+import org.example.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+ * Asynchronous discovery runs.
+ *
+ * Starting a run only creates a DiscoveryJob and answers with its id; the requested profiles are
+ * then discovered in chunks of chunkSize devices, at most maxConcurrentChunks at a time. A chunk
+ * is probed for reachability, SSH discovery runs on the reachable devices, and every device
+ * result is appended to the job as soon as it is known, which pushes it to the job's SSE
+ * listeners. Statuses are written back to discovery_profiles once per chunk.
+ *
+ * A sweep discovers whole address ranges (CIDR blocks or start-end ranges) with one credential
+ * profile instead of existing profiles. Every address is probed, rate limited and with bounded
+ * concurrency; responsive hosts are collected into chunks for SSH discovery as they answer, and
+ * the hosts SSH discovery succeeds on are upserted into discovery_profiles in one statement per
+ * chunk. Only responsive hosts produce job results.
+ *
+ * Outcomes are remembered per (ip, port, credential profile) in a DiscoveryResultCache with
+ * separate TTLs for successes and failures. Cached devices are answered from the cache without
+ * probing (marked "cached"), unless the request sets bypass_cache; fresh outcomes always refresh it.
+ *
+ * Jobs are kept in memory and can be queried by id for JOB_RETENTION_MS after they finish.
+ */
+public class DiscoveryService
+{
+    private static final Logger logger = LoggerFactory.getLogger(DiscoveryService.class);
+
+    private static final long JOB_RETENTION_MS = 3_600_000;
+
+    private static final String QUERY_FETCH_PROFILES = """
+            SELECT dp.id, dp.ip, dp.port, dp.credential_profile_id, cp.credentials
+            FROM discovery_profiles dp
+            JOIN credential_profiles cp ON dp.credential_profile_id = cp.id
+            WHERE dp.id IN (%s)
+        """;
+
+    private static final String QUERY_FETCH_CREDENTIALS = "SELECT credentials FROM credential_profiles WHERE id = $1";
+
+    // Swept hosts are named after their address, so sweeping a range again updates them in place
+    private static final String QUERY_UPSERT_SWEPT_PROFILES = """
+            INSERT INTO discovery_profiles (discovery_profile_name, credential_profile_id, ip, port, status)
+            SELECT 'sweep-' || host.ip || ':' || host.port, $2, host.ip, host.port, TRUE
+            FROM jsonb_to_recordset($1::jsonb) AS host (ip TEXT, port INT)
+            ON CONFLICT (discovery_profile_name) DO UPDATE SET
+                credential_profile_id = EXCLUDED.credential_profile_id,
+                ip = EXCLUDED.ip,
+                port = EXCLUDED.port,
+                status = TRUE
+            RETURNING id
+        """;
+
+    private static final String QUERY_UPDATE_STATUS = "UPDATE discovery_profiles SET status = $1 WHERE id = $2";
+
+    private final Vertx vertx;
+
+    private final EventBus eventBus;
+
+    private final PluginWorkerPool pluginPool;
+
+    private final ReachabilityEngine reachability;
+
+    private final int chunkSize;
+
+    private final int maxConcurrentChunks;
+
+    private final int sweepMaxHosts;
+
+    private final int sweepRate;
+
+    private final int sweepConcurrency;
+
+    private final Map<String, DiscoveryJob> jobs = new HashMap<>();
+
+    private final DiscoveryResultCache cache;
+
+    public DiscoveryService(Vertx vertx)
+    {
+        var config = vertx.getOrCreateContext().config();
+
+        this.vertx = vertx;
+
+        this.eventBus = vertx.eventBus();
+
+        this.pluginPool = PluginWorkerPool.getInstance(vertx, config);
+
+        this.reachability = new ReachabilityEngine(vertx, config);
+
+        this.chunkSize = Math.max(1, config.getInteger(Constants.CONFIG_DISCOVERY_CHUNK_SIZE, Constants.DEFAULT_DISCOVERY_CHUNK_SIZE));
+
+        this.maxConcurrentChunks = Math.max(1, config.getInteger(Constants.CONFIG_DISCOVERY_MAX_CONCURRENT_CHUNKS, Constants.DEFAULT_DISCOVERY_MAX_CONCURRENT_CHUNKS));
+
+        this.sweepMaxHosts = config.getInteger(Constants.CONFIG_DISCOVERY_SWEEP_MAX_HOSTS, Constants.DEFAULT_DISCOVERY_SWEEP_MAX_HOSTS);
+
+        this.sweepRate = config.getInteger(Constants.CONFIG_DISCOVERY_SWEEP_RATE, Constants.DEFAULT_DISCOVERY_SWEEP_RATE);
+
+        this.sweepConcurrency = config.getInteger(Constants.CONFIG_DISCOVERY_SWEEP_CONCURRENCY, Constants.DEFAULT_DISCOVERY_SWEEP_CONCURRENCY);
+
+        this.cache = new DiscoveryResultCache(
+                config.getLong(Constants.CONFIG_DISCOVERY_CACHE_POSITIVE_TTL_MS, Constants.DEFAULT_DISCOVERY_CACHE_POSITIVE_TTL_MS),
+                config.getLong(Constants.CONFIG_DISCOVERY_CACHE_NEGATIVE_TTL_MS, Constants.DEFAULT_DISCOVERY_CACHE_NEGATIVE_TTL_MS));
+
+        vertx.setPeriodic(Constants.DISCOVERY_CACHE_PURGE_INTERVAL_MS, id -> cache.purgeExpired());
+    }
+
+    public void startDiscovery(JsonArray ids, boolean bypassCache, RoutingContext context)
+    {
+        var job = new DiscoveryJob(UUID.randomUUID().toString());
+
+        jobs.put(job.getId(), job);
+
+        context.response().setStatusCode(202);
+
+        context.json(job.toJson());
+
+        track(job, fetchProfiles(ids)
+                .compose(devices ->
+                {
+                    if (devices.isEmpty())
+                    {
+                        return Future.failedFuture("No discovery data found");
+                    }
+
+                    job.setTotal(devices.size());
+
+                    logger.info("Discovery job {} started for {} devices", job.getId(), devices.size());
+
+                    return runChunks(job, devices, bypassCache);
+                }));
+    }
+
+    // Body: {"ranges": [...], "credential_profile_id": 1, "port": 22, "rate": 1000, "concurrency": 500, "bypass_cache": false};
+    // everything but ranges and credential_profile_id is optional
+    public void startSweep(JsonObject request, RoutingContext context)
+    {
+        List<String> hosts;
+
+        int credentialProfileId;
+
+        int port;
+
+        int rate;
+
+        int concurrency;
+
+        boolean bypassCache;
+
+        try
+        {
+            hosts = IpRanges.expand(request.getJsonArray(Constants.RANGES, new JsonArray()), sweepMaxHosts);
+
+            credentialProfileId = request.getInteger(Constants.CREDENTIAL_PROFILE_ID);
+
+            port = request.getInteger(Constants.PORT, Constants.DEFAULT_SSH_PORT);
+
+            rate = request.getInteger(Constants.RATE, sweepRate);
+
+            concurrency = request.getInteger(Constants.CONCURRENCY, sweepConcurrency);
+
+            bypassCache = request.getBoolean(Constants.BYPASS_CACHE, false);
+        }
+        catch (IllegalArgumentException | ClassCastException | NullPointerException exception)
+        {
+            context.response().setStatusCode(400).end(exception instanceof IllegalArgumentException
+                    ? exception.getMessage()
+                    : Constants.MESSAGE_INCORRECT_BODY);
+
+            return;
+        }
+
+        if (hosts.isEmpty() || port <= 0 || port > 65_535 || rate < 0 || concurrency <= 0)
+        {
+            context.response().setStatusCode(400).end(Constants.MESSAGE_INCORRECT_BODY);
+
+            return;
+        }
+
+        var job = new DiscoveryJob(UUID.randomUUID().toString());
+
+        jobs.put(job.getId(), job);
+
+        job.setTotal(hosts.size());
+
+        context.response().setStatusCode(202);
+
+        context.json(job.toJson());
+
+        logger.info("Discovery sweep {} started for {} hosts", job.getId(), hosts.size());
+
+        track(job, fetchCredentials(credentialProfileId)
+                .compose(credentials ->
+                {
+                    var devices = new JsonArray();
+
+                    // Plugin results are matched by id, so every swept host gets its index as one.
+                    // Cached hosts are not probed again; only the responsive ones are reported
+                    for (int i = 0; i < hosts.size(); i++)
+                    {
+                        var cached = new JsonObject().put(Constants.IP, hosts.get(i)).put(Constants.PORT, port);
+
+                        if (!bypassCache && cache.lookup(DiscoveryResultCache.key(hosts.get(i), port, credentialProfileId), cached))
+                        {
+                            if (cached.getBoolean(Constants.SUCCESS))
+                            {
+                                job.addResult(cached);
+                            }
+
+                            job.addProbed(1);
+
+                            continue;
+                        }
+
+                        devices.add(new JsonObject()
+                                .put(Constants.ID, i)
+                                .put(Constants.IP, hosts.get(i))
+                                .put(Constants.PORT, port)
+                                .put(Constants.CREDENTIALS, credentials));
+                    }
+
+                    return new SweepDiscovery(job, credentialProfileId).run(devices, concurrency, rate);
+                }));
+    }
+
+    private void track(DiscoveryJob job, Future<Void> run)
+    {
+        run.onComplete(result ->
+                {
+                    if (result.succeeded())
+                    {
+                        logger.info("Discovery job {} completed", job.getId());
+
+                        job.finish(DiscoveryJob.COMPLETED, null);
+                    }
+                    else
+                    {
+                        logger.error("Discovery job {} failed: {}", job.getId(), result.cause().getMessage());
+
+                        job.finish(DiscoveryJob.FAILED, result.cause().getMessage());
+                    }
+
+                    vertx.setTimer(JOB_RETENTION_MS, id -> jobs.remove(job.getId()));
+                });
+    }
+
+    public void getJob(String jobId, RoutingContext context)
+    {
+        var job = jobs.get(jobId);
+
+        if (job == null)
+        {
+            context.response().setStatusCode(404).end(Constants.MESSAGE_UNKNOWN_DISCOVERY_JOB);
+
+            return;
+        }
+
+        context.json(job.toJson().put(Constants.DATA, job.getResults()));
+    }
+
+    // Server-sent events: every result so far, then live results, then a final "done" event
+    public void streamJob(String jobId, RoutingContext context)
+    {
+        var job = jobs.get(jobId);
+
+        if (job == null)
+        {
+            context.response().setStatusCode(404).end(Constants.MESSAGE_UNKNOWN_DISCOVERY_JOB);
+
+            return;
+        }
+
+        var response = context.response()
+                .setChunked(true)
+                .putHeader("Content-Type", "text/event-stream")
+                .putHeader("Cache-Control", "no-cache");
+
+        for (int i = 0; i < job.getResults().size(); i++)
+        {
+            response.write("event: result\ndata: " + job.getResults().getJsonObject(i).encode() + "\n\n");
+        }
+
+        if (!job.isRunning())
+        {
+            response.end("event: done\ndata: " + job.toJson().encode() + "\n\n");
+
+            return;
+        }
+
+        var listener = new DiscoveryJob.Listener()
+        {
+            @Override
+            public void onResult(JsonObject result)
+            {
+                response.write("event: result\ndata: " + result.encode() + "\n\n");
+            }
+
+            @Override
+            public void onEnd(DiscoveryJob finished)
+            {
+                response.end("event: done\ndata: " + finished.toJson().encode() + "\n\n");
+            }
+        };
+
+        job.addListener(listener);
+
+        response.closeHandler(v -> job.removeListener(listener));
+    }
+
+    private Future<JsonObject> fetchCredentials(int credentialProfileId)
+    {
+        var request = new JsonObject()
+                .put(Constants.QUERY, QUERY_FETCH_CREDENTIALS)
+                .put(Constants.PARAMS, new JsonArray().add(credentialProfileId));
+
+        return eventBus.<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, request)
+                .compose(reply ->
+                {
+                    var body = reply.body();
+
+                    if (!body.getBoolean(Constants.SUCCESS, false))
+                    {
+                        return Future.failedFuture("DB query failed: " + body.getString(Constants.ERROR));
+                    }
+
+                    var rows = body.getJsonArray(Constants.DATA);
+
+                    if (rows.isEmpty())
+                    {
+                        return Future.failedFuture("Unknown credential profile " + credentialProfileId);
+                    }
+
+                    return Future.succeededFuture(rows.getJsonObject(0).getJsonObject(Constants.CREDENTIALS));
+                });
+    }
+
+    private Future<JsonArray> fetchProfiles(JsonArray ids)
+    {
+        if (ids == null || ids.isEmpty())
+        {
+            return Future.succeededFuture(new JsonArray());
+        }
+
+        var request = new JsonObject()
+                .put(Constants.QUERY, QUERY_FETCH_PROFILES.formatted(Utils.buildPlaceholders(ids.size())))
+                .put(Constants.PARAMS, ids);
+
+        return eventBus.<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, request)
+                .compose(reply ->
+                {
+                    var body = reply.body();
+
+                    if (!body.getBoolean(Constants.SUCCESS, false))
+                    {
+                        return Future.failedFuture("DB query failed: " + body.getString(Constants.ERROR));
+                    }
+
+                    return Future.succeededFuture(body.getJsonArray(Constants.DATA));
+                });
+    }
+
+    // Sliding window over the chunks: each finished chunk starts the next one
+    private Future<Void> runChunks(DiscoveryJob job, JsonArray devices, boolean bypassCache)
+    {
+        var promise = Promise.<Void>promise();
+
+        var chunkCount = (devices.size() + chunkSize - 1) / chunkSize;
+
+        var state = new int[2]; // [0] next chunk to start, [1] chunks finished
+
+        Runnable[] startNext = new Runnable[1];
+
+        startNext[0] = () ->
+        {
+            var from = state[0]++ * chunkSize;
+
+            var chunk = new JsonArray(devices.getList().subList(from, Math.min(devices.size(), from + chunkSize)));
+
+            discoverChunk(job, chunk, bypassCache).onComplete(result ->
+            {
+                if (result.failed())
+                {
+                    logger.warn("Discovery job {} chunk failed: {}", job.getId(), result.cause().getMessage());
+                }
+
+                if (++state[1] == chunkCount)
+                {
+                    promise.complete();
+                }
+                else if (state[0] < chunkCount)
+                {
+                    startNext[0].run();
+                }
+            });
+        };
+
+        for (int i = 0; i < Math.min(maxConcurrentChunks, chunkCount); i++)
+        {
+            startNext[0].run();
+        }
+
+        return promise.future();
+    }
+
+    private Future<Void> discoverChunk(DiscoveryJob job, JsonArray chunk, boolean bypassCache)
+    {
+        // Every device starts as unreachable and is overwritten by its SSH discovery result
+        var results = new LinkedHashMap<Integer, JsonObject>();
+
+        var keys = new HashMap<Integer, String>();
+
+        var uncached = new JsonArray();
+
+        for (int i = 0; i < chunk.size(); i++)
+        {
+            var device = chunk.getJsonObject(i);
+
+            var id = device.getInteger(Constants.ID);
+
+            var key = DiscoveryResultCache.key(device.getString(Constants.IP), device.getInteger(Constants.PORT, Constants.DEFAULT_SSH_PORT),
+                    device.getInteger(Constants.CREDENTIAL_PROFILE_ID));
+
+            var result = new JsonObject().put(Constants.ID, id).put(Constants.SUCCESS, false).put(Constants.REASON, "unreachable");
+
+            results.put(id, result);
+
+            if (!bypassCache && cache.lookup(key, result))
+            {
+                job.addResult(result);
+            }
+            else
+            {
+                keys.put(id, key);
+
+                uncached.add(device);
+            }
+        }
+
+        return reachability.filterReachable(uncached)
+                .compose(alive ->
+                {
+                    job.addProbed(chunk.size());
+
+                    var pending = new HashMap<Integer, JsonObject>();
+
+                    for (int i = 0; i < alive.size(); i++)
+                    {
+                        var id = alive.getJsonObject(i).getInteger(Constants.ID);
+
+                        pending.put(id, results.get(id));
+                    }
+
+                    keys.keySet().forEach(id ->
+                    {
+                        if (!pending.containsKey(id))
+                        {
+                            job.addResult(results.get(id));
+                        }
+                    });
+
+                    if (alive.isEmpty())
+                    {
+                        return Future.succeededFuture();
+                    }
+
+                    return pluginPool.stream(alive, Constants.DISCOVERY, pluginResult ->
+                            {
+                                var result = pending.remove(pluginResult.getInteger(Constants.ID));
+
+                                if (result != null)
+                                {
+                                    result.put(Constants.SUCCESS, pluginResult.getBoolean(Constants.SUCCESS, false))
+                                            .put(Constants.REASON, pluginResult.getString("step"));
+
+                                    job.addResult(result);
+                                }
+                            })
+                            .otherwise(err ->
+                            {
+                                logger.error("Go plugin execution failed: {}", err.getMessage());
+
+                                return null;
+                            })
+                            .onComplete(v -> pending.values().forEach(result ->
+                            {
+                                result.put(Constants.REASON, "ssh discovery failed");
+
+                                job.addResult(result);
+                            }));
+                })
+                .compose(v ->
+                {
+                    keys.forEach((id, key) -> cache.put(key, results.get(id).getBoolean(Constants.SUCCESS), results.get(id).getString(Constants.REASON)));
+
+                    return updateDiscoveryStatus(results);
+                });
+    }
+
+    private Future<Void> updateDiscoveryStatus(Map<Integer, JsonObject> results)
+    {
+        var batchParams = new JsonArray();
+
+        results.forEach((id, result) -> batchParams.add(new JsonArray().add(result.getBoolean(Constants.SUCCESS)).add(id)));
+
+        var updateRequest = new JsonObject()
+                .put(Constants.QUERY, QUERY_UPDATE_STATUS)
+                .put(Constants.PARAMS, batchParams);
+
+        return eventBus.<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, updateRequest)
+                .compose(reply -> reply.body().getBoolean(Constants.SUCCESS, false)
+                        ? Future.<Void>succeededFuture()
+                        : Future.failedFuture(reply.body().getString(Constants.ERROR)));
+    }
+
+    // One sweep: responsive hosts are batched into chunks as they answer, at most maxConcurrentChunks in SSH discovery
+    private class SweepDiscovery
+    {
+        private final DiscoveryJob job;
+
+        private final int credentialProfileId;
+
+        private final ArrayDeque<JsonArray> chunks = new ArrayDeque<>();
+
+        private final Promise<Void> promise = Promise.promise();
+
+        private JsonArray chunk = new JsonArray();
+
+        private int inFlight;
+
+        private boolean probing = true;
+
+        SweepDiscovery(DiscoveryJob job, int credentialProfileId)
+        {
+            this.job = job;
+
+            this.credentialProfileId = credentialProfileId;
+        }
+
+        Future<Void> run(JsonArray devices, int concurrency, int rate)
+        {
+            var responsive = new BitSet();
+
+            reachability.sweep(devices, concurrency, rate, device ->
+                    {
+                        responsive.set(device.getInteger(Constants.ID));
+
+                        chunk.add(device);
+
+                        if (chunk.size() >= chunkSize)
+                        {
+                            submit();
+                        }
+                    })
+                    .onComplete(v ->
+                    {
+                        job.addProbed(devices.size());
+
+                        // Silent hosts are remembered too, so sweeping a mostly dead range again is cheap
+                        for (int i = 0; i < devices.size(); i++)
+                        {
+                            var host = devices.getJsonObject(i);
+
+                            if (responsive.get(host.getInteger(Constants.ID)))
+                            {
+                                continue;
+                            }
+
+                            cache.put(DiscoveryResultCache.key(host.getString(Constants.IP), host.getInteger(Constants.PORT), credentialProfileId),
+                                    false, "unreachable");
+                        }
+
+                        probing = false;
+
+                        submit();
+                    });
+
+            return promise.future();
+        }
+
+        private void submit()
+        {
+            if (!chunk.isEmpty())
+            {
+                chunks.add(chunk);
+
+                chunk = new JsonArray();
+            }
+
+            drain();
+        }
+
+        private void drain()
+        {
+            while (inFlight < maxConcurrentChunks && !chunks.isEmpty())
+            {
+                inFlight++;
+
+                discoverHosts(chunks.poll()).onComplete(result ->
+                {
+                    if (result.failed())
+                    {
+                        logger.warn("Discovery sweep {} chunk failed: {}", job.getId(), result.cause().getMessage());
+                    }
+
+                    inFlight--;
+
+                    drain();
+                });
+            }
+
+            if (!probing && inFlight == 0 && chunks.isEmpty())
+            {
+                promise.tryComplete();
+            }
+        }
+
+        private Future<Void> discoverHosts(JsonArray hosts)
+        {
+            var pending = new HashMap<Integer, JsonObject>();
+
+            for (int i = 0; i < hosts.size(); i++)
+            {
+                pending.put(hosts.getJsonObject(i).getInteger(Constants.ID), hosts.getJsonObject(i));
+            }
+
+            var discovered = new JsonArray();
+
+            return pluginPool.stream(hosts, Constants.DISCOVERY, pluginResult ->
+                    {
+                        var host = pending.remove(pluginResult.getInteger(Constants.ID));
+
+                        if (host == null)
+                        {
+                            return;
+                        }
+
+                        var success = pluginResult.getBoolean(Constants.SUCCESS, false);
+
+                        cache.put(DiscoveryResultCache.key(host.getString(Constants.IP), host.getInteger(Constants.PORT), credentialProfileId),
+                                success, pluginResult.getString("step"));
+
+                        if (success)
+                        {
+                            discovered.add(new JsonObject().put(Constants.IP, host.getString(Constants.IP)).put(Constants.PORT, host.getInteger(Constants.PORT)));
+                        }
+
+                        job.addResult(new JsonObject()
+                                .put(Constants.IP, host.getString(Constants.IP))
+                                .put(Constants.PORT, host.getInteger(Constants.PORT))
+                                .put(Constants.SUCCESS, success)
+                                .put(Constants.REASON, pluginResult.getString("step")));
+                    })
+                    .otherwise(err ->
+                    {
+                        logger.error("Go plugin execution failed: {}", err.getMessage());
+
+                        return null;
+                    })
+                    .compose(v ->
+                    {
+                        pending.values().forEach(host ->
+                        {
+                            cache.put(DiscoveryResultCache.key(host.getString(Constants.IP), host.getInteger(Constants.PORT), credentialProfileId),
+                                    false, "ssh discovery failed");
+
+                            job.addResult(new JsonObject()
+                                    .put(Constants.IP, host.getString(Constants.IP))
+                                    .put(Constants.PORT, host.getInteger(Constants.PORT))
+                                    .put(Constants.SUCCESS, false)
+                                    .put(Constants.REASON, "ssh discovery failed"));
+                        });
+
+                        return upsertProfiles(discovered);
+                    });
+        }
+
+        private Future<Void> upsertProfiles(JsonArray discovered)
+        {
+            if (discovered.isEmpty())
+            {
+                return Future.succeededFuture();
+            }
+
+            var request = new JsonObject()
+                    .put(Constants.QUERY, QUERY_UPSERT_SWEPT_PROFILES)
+                    .put(Constants.PARAMS, new JsonArray().add(discovered.encode()).add(credentialProfileId));
+
+            return eventBus.<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, request)
+                    .compose(reply -> reply.body().getBoolean(Constants.SUCCESS, false)
+                            ? Future.<Void>succeededFuture()
+                            : Future.failedFuture(reply.body().getString(Constants.ERROR)));
+        }
+    }
+}
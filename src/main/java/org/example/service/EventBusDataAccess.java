@@ -0,0 +1,40 @@
+package org.example.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import org.example.server.QueryCommand;
+import org.example.server.QueryResult;
+import org.example.utils.Constants;
+
+// Two request/replies per call: QueryBuilderVerticle, then DBVerticle
+class EventBusDataAccess implements DataAccess
+{
+    private final EventBus eventBus;
+
+    EventBusDataAccess(Vertx vertx)
+    {
+        this.eventBus = vertx.eventBus();
+    }
+
+    @Override
+    public Future<QueryResult> execute(JsonObject request)
+    {
+        return eventBus.<QueryCommand>request(Constants.EVENTBUS_QUERYBUILDER_ADDRESS, request)
+                .compose(reply -> query(reply.body()));
+    }
+
+    @Override
+    public Future<QueryResult> query(QueryCommand command)
+    {
+        return eventBus.<QueryResult>request(Constants.EVENTBUS_DATABASE_ADDRESS, command).map(Message::body);
+    }
+
+    @Override
+    public Future<JsonObject> getBuilderStats()
+    {
+        return eventBus.<JsonObject>request(Constants.EVENTBUS_QUERYBUILDER_STATS_ADDRESS, null).map(Message::body);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.SqlClient;
+import org.example.server.DatabasePool;
+import org.example.server.QueryCommand;
+import org.example.server.QueryResult;
+import org.example.utils.Constants;
+
+// Builds on the caller's event loop and runs on the shared pipelined client
+class LocalDataAccess implements DataAccess
+{
+    private final QueryBuilder builder;
+
+    private final SqlClient client;
+
+    LocalDataAccess(Vertx vertx, JsonObject config)
+    {
+        this.builder = new QueryBuilder(config.getInteger(Constants.CONFIG_QUERY_PLAN_CACHE_SIZE, Constants.DEFAULT_QUERY_PLAN_CACHE_SIZE));
+
+        this.client = DatabasePool.createPipelined(vertx, config);
+    }
+
+    @Override
+    public Future<QueryResult> execute(JsonObject request)
+    {
+        QueryCommand command;
+
+        try
+        {
+            command = builder.build(request);
+        }
+        catch (IllegalArgumentException exception)
+        {
+            return Future.failedFuture(exception);
+        }
+
+        return query(command);
+    }
+
+    @Override
+    public Future<QueryResult> query(QueryCommand command)
+    {
+        return DatabasePool.withCommand(client, pipelined -> pipelined.preparedQuery(command.getSql()).execute(command.getParams()))
+                .map(QueryResult::new);
+    }
+
+    @Override
+    public Future<JsonObject> getBuilderStats()
+    {
+        return Future.succeededFuture(builder.getStats());
+    }
+}
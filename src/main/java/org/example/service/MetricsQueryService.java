@@ -0,0 +1,235 @@
+package org.example.service;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowStream;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Transaction;
+import io.vertx.sqlclient.Tuple;
+import org.example.server.DatabasePool;
+import org.example.server.PooledJsonOutput;
+import org.example.server.RowJsonWriter;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+
+/*
+ * Raw metrics export straight from Postgres to the HTTP response.
+ *
+ * Rows are read through a server-side cursor FETCH_ROWS at a time and written as a chunked JSON
+ * array. The cursor is paused whenever the response write queue is full and resumed once it
+ * drains, so a slow client holds back the database reads instead of buffering rows in memory,
+ * and memory stays constant whatever the size of the range. Rows are generated as JSON straight
+ * into a pooled buffer, which is handed to the response every CHUNK_BYTES.
+ *
+ * With maxPoints the rows are reduced by MinMaxDownsampler on the way through, in the same pass,
+ * and one element per time bucket is written instead of one per row.
+ *
+ * Cursors only live inside a transaction, which the event-bus request/reply path to DBVerticle
+ * cannot hold open, so this service reads through its own small pool shared by every HTTP
+ * verticle instance, sized by export.pool.size.
+ */
+public class MetricsQueryService
+{
+    private static final Logger logger = LoggerFactory.getLogger(MetricsQueryService.class);
+
+    private static final int FETCH_ROWS = 500;
+
+    private static final int CHUNK_BYTES = 32 * 1024;
+
+    private static final String QUERY_METRICS = """
+            SELECT polled_at, data
+            FROM provisioned_data
+            WHERE job_id = $1 AND polled_at >= $2 AND polled_at < $3
+            ORDER BY polled_at
+        """;
+
+    private final Pool client;
+
+    public MetricsQueryService(Vertx vertx, JsonObject config)
+    {
+        client = DatabasePool.createExportPool(vertx, config);
+    }
+
+    // maxPoints of 0 streams the raw rows
+    public void streamMetrics(int jobId, OffsetDateTime from, OffsetDateTime to, int maxPoints, RoutingContext context)
+    {
+        var downsampler = maxPoints > 0
+                ? new MinMaxDownsampler(from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli(), maxPoints)
+                : null;
+
+        var response = context.response();
+
+        client.getConnection()
+                .onFailure(err -> fail(response, err))
+                .onSuccess(connection -> connection.begin()
+                        .compose(transaction -> connection.prepare(QUERY_METRICS)
+                                .onSuccess(statement -> stream(connection, transaction,
+                                        statement.createStream(FETCH_ROWS, Tuple.of(jobId, from, to)), downsampler, response)))
+                        .onFailure(err ->
+                        {
+                            connection.close();
+
+                            fail(response, err);
+                        }));
+    }
+
+    private void stream(SqlConnection connection, Transaction transaction, RowStream<Row> rows,
+                        MinMaxDownsampler downsampler, HttpServerResponse response)
+    {
+        var output = new PooledJsonOutput();
+
+        var generator = output.getGenerator();
+
+        var rowWriter = new RowJsonWriter[1];
+
+        // Set once the output is released; the cursor may still deliver rows it had fetched
+        var released = new boolean[1];
+
+        response.setChunked(true).putHeader("Content-Type", "application/json");
+
+        writeJson(() -> generator.writeStartArray());
+
+        // Client went away mid-export: stop reading and give the connection back
+        response.closeHandler(v ->
+        {
+            released[0] = true;
+
+            rows.close();
+
+            output.release();
+
+            transaction.rollback().eventually(() -> connection.close());
+        });
+
+        rows.exceptionHandler(err ->
+        {
+            logger.error("Metrics export failed: {}", err.getMessage());
+
+            response.closeHandler(null);
+
+            if (released[0])
+            {
+                return;
+            }
+
+            released[0] = true;
+
+            output.release();
+
+            transaction.rollback().eventually(() -> connection.close());
+
+            // Headers are already out once the first chunk is written, so the only signal left is a reset
+            if (response.headWritten())
+            {
+                response.reset();
+            }
+            else
+            {
+                fail(response, err);
+            }
+        });
+
+        rows.endHandler(v ->
+        {
+            if (released[0])
+            {
+                return;
+            }
+
+            released[0] = true;
+
+            response.closeHandler(null);
+
+            var last = downsampler != null ? downsampler.finish() : null;
+
+            writeJson(() ->
+            {
+                if (last != null)
+                {
+                    RowJsonWriter.writeValue(last, generator);
+                }
+
+                generator.writeEndArray();
+            });
+
+            output.endTo(response);
+
+            transaction.commit().eventually(() -> connection.close());
+        });
+
+        rows.handler(row ->
+        {
+            if (released[0])
+            {
+                return;
+            }
+
+            if (downsampler == null)
+            {
+                // Raw rows go out column by column as they are: {"polled_at": ..., "data": {...}}
+                if (rowWriter[0] == null)
+                {
+                    rowWriter[0] = RowJsonWriter.forRow(row);
+                }
+
+                rowWriter[0].writeRow(row, generator);
+            }
+            else if (row.getValue(Constants.DATA) instanceof JsonObject data)
+            {
+                var bucket = downsampler.add(row.getOffsetDateTime(Constants.POLLED_AT).toInstant().toEpochMilli(), data);
+
+                if (bucket != null)
+                {
+                    writeJson(() -> RowJsonWriter.writeValue(bucket, generator));
+                }
+            }
+
+            if (output.size() >= CHUNK_BYTES)
+            {
+                output.writeTo(response);
+            }
+
+            if (response.writeQueueFull())
+            {
+                rows.pause();
+
+                response.drainHandler(drained -> rows.resume());
+            }
+        });
+    }
+
+    private interface JsonWrite
+    {
+        void write() throws IOException;
+    }
+
+    private void writeJson(JsonWrite write)
+    {
+        try
+        {
+            write.write();
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void fail(HttpServerResponse response, Throwable err)
+    {
+        if (!response.ended() && !response.closed())
+        {
+            response.setStatusCode(500)
+                    .end(new JsonObject().put(Constants.ERROR, "Metrics query failed: " + err.getMessage()).encodePrettily());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.service;
+
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Single-pass min/max bucketing of a time-ordered metrics series.
+ *
+ * The requested range is cut into maxPoints / 2 equal time buckets, and for every numeric metric
+ * a bucket keeps only its minimum and maximum sample with their timestamps, so each series keeps
+ * its peaks and dips while being reduced to at most maxPoints points. With maxPoints 1 the whole
+ * range is one bucket that keeps only the maximum. Rows must arrive in
+ * timestamp order; a bucket is emitted as soon as a row of a later bucket arrives, so memory is
+ * one bucket's worth of per-metric extremes whatever the number of rows.
+ *
+ * Min/max bucketing is used rather than LTTB because LTTB picks a bucket's point using the next
+ * bucket's average, which means holding a whole bucket of raw rows back.
+ */
+class MinMaxDownsampler
+{
+    private static final class Extremes
+    {
+        double min;
+
+        long minAt;
+
+        double max;
+
+        long maxAt;
+    }
+
+    private final long from;
+
+    private final long bucketMillis;
+
+    private final long lastBucket;
+
+    private final boolean maxOnly;
+
+    private final Map<String, Extremes> extremes = new LinkedHashMap<>();
+
+    private long currentBucket = -1;
+
+    MinMaxDownsampler(long from, long to, int maxPoints)
+    {
+        this.from = from;
+
+        var buckets = Math.max(1, maxPoints / 2);
+
+        // Rounded up, so buckets * bucketMillis covers the range and no row starts an extra bucket
+        this.bucketMillis = Math.max(1, Math.ceilDiv(to - from, buckets));
+
+        this.lastBucket = buckets - 1;
+
+        this.maxOnly = maxPoints < 2;
+    }
+
+    // Returns the bucket this row closed, or null while the current bucket is still filling
+    JsonObject add(long timestamp, JsonObject data)
+    {
+        // A row at to (or, with a skewed clock, outside the range) goes to the nearest bucket
+        var bucket = Math.min(lastBucket, Math.max(0, (timestamp - from) / bucketMillis));
+
+        JsonObject closed = null;
+
+        if (bucket != currentBucket)
+        {
+            closed = finish();
+
+            currentBucket = bucket;
+        }
+
+        for (var metric : data)
+        {
+            if (!(metric.getValue() instanceof Number number))
+            {
+                continue;
+            }
+
+            var value = number.doubleValue();
+
+            var current = extremes.get(metric.getKey());
+
+            if (current == null)
+            {
+                current = new Extremes();
+
+                current.min = current.max = value;
+
+                current.minAt = current.maxAt = timestamp;
+
+                extremes.put(metric.getKey(), current);
+            }
+            else if (value < current.min)
+            {
+                current.min = value;
+
+                current.minAt = timestamp;
+            }
+            else if (value > current.max)
+            {
+                current.max = value;
+
+                current.maxAt = timestamp;
+            }
+        }
+
+        return closed;
+    }
+
+    // Emits the bucket being filled, if any
+    JsonObject finish()
+    {
+        if (currentBucket < 0 || extremes.isEmpty())
+        {
+            return null;
+        }
+
+        var data = new JsonObject();
+
+        extremes.forEach((metric, current) ->
+        {
+            var point = new JsonObject();
+
+            if (!maxOnly)
+            {
+                point.put("min", current.min).put("min_at", Instant.ofEpochMilli(current.minAt).toString());
+            }
+
+            data.put(metric, point.put("max", current.max).put("max_at", Instant.ofEpochMilli(current.maxAt).toString()));
+        });
+
+        extremes.clear();
+
+        return new JsonObject()
+                .put(Constants.BUCKET, Instant.ofEpochMilli(from + currentBucket * bucketMillis).toString())
+                .put(Constants.DATA, data);
+    }
+}
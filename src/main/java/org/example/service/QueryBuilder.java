@@ -0,0 +1,153 @@
+package org.example.service;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Tuple;
+import org.example.server.QueryCommand;
+import org.example.utils.Constants;
+import org.example.utils.Utils;
+
+import java.util.List;
+
+/*
+ * Turns CRUD requests ({"operation", "tableName", "data", "conditions", "columns"}) into a
+ * QueryCommand. The SQL only depends on the request's shape, so it is generated once per shape
+ * and then taken from a QueryPlanCache; every request only binds its values into a Tuple, in the
+ * order the placeholders were generated (data fields first, then conditions). INSERT and UPDATE
+ * return the affected ids. Not thread safe: one instance per event loop.
+ */
+public class QueryBuilder
+{
+    private static final String RETURNING_ID = " RETURNING id";
+
+    private final QueryPlanCache plans;
+
+    public QueryBuilder(int cacheSize)
+    {
+        plans = new QueryPlanCache(cacheSize);
+    }
+
+    public JsonObject getStats()
+    {
+        return plans.getStats();
+    }
+
+    // Throws IllegalArgumentException on an unknown operation
+    public QueryCommand build(JsonObject input)
+    {
+        var operation = String.valueOf(input.getString(Constants.OPERATION)).toLowerCase();
+
+        var table = input.getString(Constants.TABLE_NAME);
+
+        var data = input.getJsonObject(Constants.DATA, new JsonObject());
+
+        var conditions = input.getJsonObject(Constants.CONDITIONS, new JsonObject());
+
+        var columns = input.getJsonArray(Constants.COLUMNS, new JsonArray());
+
+        var dataKeys = List.copyOf(data.fieldNames());
+
+        var conditionKeys = List.copyOf(conditions.fieldNames());
+
+        var key = operation + "|" + table + "|" + String.join(",", dataKeys) + "|" + columns.encode() + "|" + String.join(",", conditionKeys);
+
+        var sql = plans.get(key, shape -> compile(operation, table, dataKeys, columns, conditionKeys));
+
+        var params = Tuple.tuple();
+
+        // Same order as the placeholders: data fields for INSERT/UPDATE, then conditions
+        if (Constants.DB_INSERT.equals(operation) || Constants.DB_UPDATE.equals(operation))
+        {
+            for (var field : dataKeys)
+            {
+                params.addValue(data.getValue(field));
+            }
+        }
+
+        for (var field : conditionKeys)
+        {
+            params.addValue(conditions.getValue(field));
+        }
+
+        return new QueryCommand(sql, params);
+    }
+
+    private String compile(String operation, String table, List<String> dataKeys, JsonArray columns, List<String> conditionKeys)
+    {
+        var query = new StringBuilder();
+
+        switch (operation)
+        {
+            case Constants.DB_INSERT:
+
+                query.append("INSERT INTO ").append(table)
+                        .append(" (").append(String.join(", ", dataKeys)).append(")")
+                        .append(" VALUES (").append(Utils.buildPlaceholders(dataKeys.size())).append(")")
+                        .append(RETURNING_ID);
+
+                break;
+
+            case Constants.DB_SELECT:
+
+                var columnStr = !columns.isEmpty()
+                        ? String.join(", ", columns.stream().map(Object::toString).toList())
+                        : "*";
+
+                query.append("SELECT ").append(columnStr).append(" FROM ").append(table);
+
+                appendWhereClause(query, conditionKeys, 1);
+
+                break;
+
+            case Constants.DB_UPDATE:
+
+                query.append("UPDATE ").append(table).append(" SET ");
+
+                var index = 1;
+
+                for (var key : dataKeys)
+                {
+                    query.append(key).append(" = $").append(index++);
+
+                    if (index <= dataKeys.size()) query.append(", ");
+                }
+
+                appendWhereClause(query, conditionKeys, index);
+
+                query.append(RETURNING_ID);
+
+                break;
+
+            case Constants.DB_DELETE:
+
+                query.append("DELETE FROM ").append(table);
+
+                appendWhereClause(query, conditionKeys, 1);
+
+                break;
+
+            default:
+
+                throw new IllegalArgumentException("Invalid operation: " + operation);
+        }
+
+        return query.toString();
+    }
+
+    private void appendWhereClause(StringBuilder query, List<String> conditionKeys, int paramStartIndex)
+    {
+        if (conditionKeys.isEmpty())
+        {
+            return;
+        }
+
+        query.append(" WHERE ");
+
+        for (int i = 0; i < conditionKeys.size(); i++)
+        {
+            if (i > 0) query.append(" AND ");
+
+            query.append(conditionKeys.get(i)).append(" = $").append(paramStartIndex + i);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.service;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Bounded LRU cache of generated SQL, keyed by the shape of a query builder request: operation,
+ * table, ordered column list and ordered condition keys. Parameter values are not part of the
+ * key; they are bound separately in the same order the SQL placeholders were generated.
+ * Only touched from the event loop of the verticle that owns its QueryBuilder.
+ */
+class QueryPlanCache
+{
+    private final Map<String, String> plans;
+
+    private long hits;
+
+    private long misses;
+
+    QueryPlanCache(int maxSize)
+    {
+        plans = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    String get(String key, Function<String, String> compiler)
+    {
+        var sql = plans.get(key);
+
+        if (sql != null)
+        {
+            hits++;
+
+            return sql;
+        }
+
+        misses++;
+
+        sql = compiler.apply(key);
+
+        plans.put(key, sql);
+
+        return sql;
+    }
+
+    JsonObject getStats()
+    {
+        var lookups = hits + misses;
+
+        return new JsonObject()
+                .put("plans", plans.size())
+                .put("hits", hits)
+                .put("misses", misses)
+                .put("hit_ratio", lookups == 0 ? 0.0 : (double) hits / lookups);
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.service;
+
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/*
+ * Rollup tables from finest to coarsest, with the width of one bucket, how long the table keeps
+ * buckets and the period its range partitions span. Expired buckets go a partition at a time, so a
+ * table holds at least its retention and at most one partition period more.
+ */
+public enum RollupResolution
+{
+    MINUTE("1m", "metric_rollups_1m", 60_000L, ChronoUnit.DAYS,
+            Constants.CONFIG_ROLLUP_RETENTION_MINUTE_DAYS, Constants.DEFAULT_ROLLUP_RETENTION_MINUTE_DAYS),
+
+    HOUR("1h", "metric_rollups_1h", 3_600_000L, ChronoUnit.MONTHS,
+            Constants.CONFIG_ROLLUP_RETENTION_HOUR_DAYS, Constants.DEFAULT_ROLLUP_RETENTION_HOUR_DAYS),
+
+    DAY("1d", "metric_rollups_1d", 86_400_000L, ChronoUnit.YEARS,
+            Constants.CONFIG_ROLLUP_RETENTION_DAY_DAYS, Constants.DEFAULT_ROLLUP_RETENTION_DAY_DAYS);
+
+    private final String label;
+
+    private final String table;
+
+    private final long bucketMillis;
+
+    private final ChronoUnit partitionPeriod;
+
+    private final String retentionKey;
+
+    private final int defaultRetentionDays;
+
+    RollupResolution(String label, String table, long bucketMillis, ChronoUnit partitionPeriod, String retentionKey, int defaultRetentionDays)
+    {
+        this.label = label;
+
+        this.table = table;
+
+        this.bucketMillis = bucketMillis;
+
+        this.partitionPeriod = partitionPeriod;
+
+        this.retentionKey = retentionKey;
+
+        this.defaultRetentionDays = defaultRetentionDays;
+    }
+
+    public String getLabel()
+    {
+        return label;
+    }
+
+    public String getTable()
+    {
+        return table;
+    }
+
+    public ChronoUnit getPartitionPeriod()
+    {
+        return partitionPeriod;
+    }
+
+    public int getRetentionDays(JsonObject config)
+    {
+        return config.getInteger(retentionKey, defaultRetentionDays);
+    }
+
+    // Start of the bucket holding the instant. Buckets are UTC aligned, which for minutes, hours and
+    // UTC days is the same as aligned to the epoch
+    public Instant alignDown(Instant instant)
+    {
+        return Instant.ofEpochMilli(Math.floorDiv(instant.toEpochMilli(), bucketMillis) * bucketMillis);
+    }
+
+    private boolean retains(Instant from, Instant now, JsonObject config)
+    {
+        return !from.isBefore(now.minus(getRetentionDays(config), ChronoUnit.DAYS));
+    }
+
+    // Coarsest resolution that still yields at least maxPoints buckets over the range, so the rows
+    // read stay close to maxPoints whether the range is an hour or a year. Resolutions whose
+    // retention no longer reaches back to from are skipped, since they would return the range with
+    // its start cut off; if none reaches that far, the one keeping the most history is used
+    public static RollupResolution select(Instant from, Instant to, int maxPoints, JsonObject config)
+    {
+        var now = Instant.now();
+
+        var bucketBudget = (to.toEpochMilli() - from.toEpochMilli()) / Math.max(1, maxPoints);
+
+        RollupResolution selected = null;
+
+        RollupResolution longestKept = DAY;
+
+        for (var resolution : values())
+        {
+            if (resolution.getRetentionDays(config) > longestKept.getRetentionDays(config))
+            {
+                longestKept = resolution;
+            }
+
+            if (!resolution.retains(from, now, config))
+            {
+                continue;
+            }
+
+            // The finest retained resolution is the fallback when even it is coarser than the budget
+            if (selected == null || resolution.bucketMillis <= bucketBudget)
+            {
+                selected = resolution;
+            }
+        }
+
+        return selected != null ? selected : longestKept;
+    }
+}
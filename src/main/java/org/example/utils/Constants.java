@@ -69,4 +69,290 @@ public class Constants
     public static final String DISCOVERY = "discovery";
 
     public static final String EVENTBUS_QUERYBUILDER_ADDRESS = "query.builder";
+
+    public static final String CONFIG_POLLING_BATCH_SIZE = "polling.batch.size";
+
+    public static final int DEFAULT_POLLING_BATCH_SIZE = 100;
+
+    public static final String REQUEST_ID = "request_id";
+
+    public static final String MODE = "mode";
+
+    public static final String DEVICES = "devices";
+
+    public static final String DONE = "done";
+
+    public static final String READY = "ready";
+
+    public static final String CONFIG_FILE = "config.json";
+
+    public static final String CONFIG_PLUGIN_PATH = "plugin.path";
+
+    public static final String DEFAULT_PLUGIN_PATH = "go/ssh-plugin";
+
+    public static final String CONFIG_PLUGIN_POOL_SIZE = "plugin.pool.size";
+
+    public static final int DEFAULT_PLUGIN_POOL_SIZE = 4;
+
+    public static final String CONFIG_PLUGIN_REQUEST_TIMEOUT_MS = "plugin.request.timeout.ms";
+
+    public static final long DEFAULT_PLUGIN_REQUEST_TIMEOUT_MS = 60_000;
+
+    public static final String CONFIG_PLUGIN_DEVICE_TIMEOUT_MS = "plugin.device.timeout.ms";
+
+    public static final long DEFAULT_PLUGIN_DEVICE_TIMEOUT_MS = 20_000;
+
+    public static final String CANCEL = "cancel";
+
+    public static final String CONFIG_PLUGIN_MAX_PENDING_REQUESTS = "plugin.max.pending.requests";
+
+    public static final int DEFAULT_PLUGIN_MAX_PENDING_REQUESTS = 64;
+
+    public static final String POLLING_INTERVAL = "polling_interval";
+
+    public static final int DEFAULT_POLLING_INTERVAL_SECONDS = 300;
+
+    public static final String CONFIG_POLLING_SYNC_INTERVAL_MS = "polling.sync.interval.ms";
+
+    public static final long DEFAULT_POLLING_SYNC_INTERVAL_MS = 60_000;
+
+    public static final String CONFIG_POLLING_MAX_IN_FLIGHT = "polling.max.in.flight";
+
+    public static final int DEFAULT_POLLING_MAX_IN_FLIGHT = 8;
+
+    public static final String CONFIG_POLLING_BATCH_TIMEOUT_MS = "polling.batch.timeout.ms";
+
+    public static final long DEFAULT_POLLING_BATCH_TIMEOUT_MS = 120_000;
+
+    public static final String EVENTBUS_POLLING_STATS_ADDRESS = "polling.scheduler.stats";
+
+    public static final String EVENTBUS_POLLING_PROCESSOR_HEARTBEAT_ADDRESS = "polling.processor.heartbeat";
+
+    public static final String EVENTBUS_POLLING_PROCESSOR_LEAVE_ADDRESS = "polling.processor.leave";
+
+    // Published by a starting scheduler so processors announce themselves without waiting for their next heartbeat
+    public static final String EVENTBUS_POLLING_PROCESSOR_DISCOVER_ADDRESS = "polling.processor.discover";
+
+    public static final long POLLING_PROCESSOR_HEARTBEAT_MS = 5_000;
+
+    // Appended to a processor's address for cancelling a batch the scheduler stopped waiting for
+    public static final String POLLING_PROCESSOR_CANCEL_SUFFIX = ".cancel";
+
+    // Appended to a processor's address for releasing jobs the ring moved to a processor that joined
+    public static final String POLLING_PROCESSOR_RELEASE_SUFFIX = ".release";
+
+    // Published with the ids of jobs deleted or leased to another node, so processors drop their state
+    public static final String EVENTBUS_POLLING_JOBS_DROPPED_ADDRESS = "polling.jobs.dropped";
+
+    public static final String BATCH_ID = "batch_id";
+
+    public static final String CONFIG_POLLING_PROCESSOR_INSTANCES = "polling.processor.instances";
+
+    public static final int DEFAULT_POLLING_PROCESSOR_INSTANCES = 1;
+
+    public static final String BUCKET = "bucket";
+
+    public static final int POLLING_LEASE_BUCKETS = 256;
+
+    public static final String CONFIG_NODE_ID = "node.id";
+
+    public static final String CONFIG_POLLING_LEASE_TTL_MS = "polling.lease.ttl.ms";
+
+    public static final int DEFAULT_POLLING_LEASE_TTL_MS = 30_000;
+
+    public static final String CONFIG_HTTP_PORT = "http.port";
+
+    public static final int DEFAULT_HTTP_PORT = 8080;
+
+    public static final String CONFIG_DATA_RETENTION_DAYS = "data.retention.days";
+
+    public static final int DEFAULT_DATA_RETENTION_DAYS = 30;
+
+    public static final String CONFIG_DATA_PARTITION_PREMAKE_DAYS = "data.partition.premake.days";
+
+    public static final int DEFAULT_DATA_PARTITION_PREMAKE_DAYS = 3;
+
+    public static final long PARTITION_MAINTENANCE_INTERVAL_MS = 3_600_000;
+
+    public static final String EVENTBUS_INGESTION_ADDRESS = "database.ingestion";
+
+    public static final String CONFIG_INGESTION_FLUSH_ROWS = "ingestion.flush.rows";
+
+    public static final int DEFAULT_INGESTION_FLUSH_ROWS = 1_000;
+
+    public static final String CONFIG_INGESTION_FLUSH_INTERVAL_MS = "ingestion.flush.interval.ms";
+
+    public static final long DEFAULT_INGESTION_FLUSH_INTERVAL_MS = 1_000;
+
+    // Answered by the first DBVerticle instance with the sum over all instances; instance N answers
+    // for its own writers on this address suffixed with "." + N
+    public static final String EVENTBUS_INGESTION_STATS_ADDRESS = "database.ingestion.stats";
+
+    public static final String CONFIG_SPOOL_DIR = "spool.dir";
+
+    public static final String DEFAULT_SPOOL_DIR = "spool";
+
+    public static final String CONFIG_SPOOL_SEGMENT_BYTES = "spool.segment.bytes";
+
+    public static final int DEFAULT_SPOOL_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    // Per DBVerticle instance; each instance has its own spool
+    public static final String CONFIG_SPOOL_MAX_BYTES = "spool.max.bytes";
+
+    public static final long DEFAULT_SPOOL_MAX_BYTES = 512L * 1024 * 1024;
+
+    public static final String CONFIG_ROLLUP_RETENTION_MINUTE_DAYS = "rollup.retention.minute.days";
+
+    public static final int DEFAULT_ROLLUP_RETENTION_MINUTE_DAYS = 7;
+
+    public static final String CONFIG_ROLLUP_RETENTION_HOUR_DAYS = "rollup.retention.hour.days";
+
+    public static final int DEFAULT_ROLLUP_RETENTION_HOUR_DAYS = 90;
+
+    public static final String CONFIG_ROLLUP_RETENTION_DAY_DAYS = "rollup.retention.day.days";
+
+    public static final int DEFAULT_ROLLUP_RETENTION_DAY_DAYS = 1_825;
+
+    public static final String METRIC = "metric";
+
+    public static final String FROM = "from";
+
+    public static final String TO = "to";
+
+    public static final String MAX_POINTS = "maxPoints";
+
+    public static final int DEFAULT_MAX_POINTS = 500;
+
+    public static final String MESSAGE_NO_LATEST_SAMPLE = "No sample polled yet for this device";
+
+    public static final String IDS = "ids";
+
+    public static final String MESSAGE_INVALID_TIME_RANGE = "from and to must be ISO-8601 timestamps with from before to";
+
+    public static final String CONFIG_ALERT_RULES = "alert.rules";
+
+    public static final String EVENTBUS_ALERT_ADDRESS = "alerts.state";
+
+    public static final String ALERT_RAISED = "raised";
+
+    public static final String ALERT_CLEARED = "cleared";
+
+    public static final String CONFIG_REACHABILITY_PROBES = "reachability.probes";
+
+    public static final String PROBE_TCP = "tcp";
+
+    public static final String PROBE_ICMP = "icmp";
+
+    public static final String PROBE_FPING = "fping";
+
+    public static final String CONFIG_REACHABILITY_FPING_SHARDS = "reachability.fping.shards";
+
+    public static final String CONFIG_REACHABILITY_FPING_MAX_PROCESSES = "reachability.fping.max.processes";
+
+    public static final String CONFIG_REACHABILITY_TIMEOUT_MS = "reachability.timeout.ms";
+
+    public static final int DEFAULT_REACHABILITY_TIMEOUT_MS = 1_000;
+
+    public static final String CONFIG_REACHABILITY_CONCURRENCY = "reachability.concurrency";
+
+    public static final int DEFAULT_REACHABILITY_CONCURRENCY = 2_000;
+
+    public static final int DEFAULT_SSH_PORT = 22;
+
+    public static final String CONFIG_DISCOVERY_CHUNK_SIZE = "discovery.chunk.size";
+
+    public static final int DEFAULT_DISCOVERY_CHUNK_SIZE = 256;
+
+    public static final String CONFIG_DISCOVERY_MAX_CONCURRENT_CHUNKS = "discovery.max.concurrent.chunks";
+
+    public static final int DEFAULT_DISCOVERY_MAX_CONCURRENT_CHUNKS = 4;
+
+    public static final String JOB_ID = "job_id";
+
+    public static final String STATUS = "status";
+
+    public static final String REASON = "reason";
+
+    public static final String JOB_ID_PARAM = "jobId";
+
+    public static final String MESSAGE_UNKNOWN_DISCOVERY_JOB = "Unknown or expired discovery job";
+
+    public static final String RANGES = "ranges";
+
+    public static final String RATE = "rate";
+
+    public static final String CONCURRENCY = "concurrency";
+
+    public static final String CONFIG_DISCOVERY_SWEEP_MAX_HOSTS = "discovery.sweep.max.hosts";
+
+    public static final int DEFAULT_DISCOVERY_SWEEP_MAX_HOSTS = 65_536;
+
+    public static final String CONFIG_DISCOVERY_SWEEP_RATE = "discovery.sweep.rate";
+
+    public static final int DEFAULT_DISCOVERY_SWEEP_RATE = 1_000;
+
+    public static final String CONFIG_DISCOVERY_SWEEP_CONCURRENCY = "discovery.sweep.concurrency";
+
+    public static final int DEFAULT_DISCOVERY_SWEEP_CONCURRENCY = 500;
+
+    public static final String CONFIG_DISCOVERY_CACHE_POSITIVE_TTL_MS = "discovery.cache.positive.ttl.ms";
+
+    public static final long DEFAULT_DISCOVERY_CACHE_POSITIVE_TTL_MS = 600_000;
+
+    public static final String CONFIG_DISCOVERY_CACHE_NEGATIVE_TTL_MS = "discovery.cache.negative.ttl.ms";
+
+    public static final long DEFAULT_DISCOVERY_CACHE_NEGATIVE_TTL_MS = 60_000;
+
+    public static final long DISCOVERY_CACHE_PURGE_INTERVAL_MS = 60_000;
+
+    public static final String BYPASS_CACHE = "bypass_cache";
+
+    public static final String CACHED = "cached";
+
+    public static final String CONFIG_QUERY_PLAN_CACHE_SIZE = "query.plan.cache.size";
+
+    public static final int DEFAULT_QUERY_PLAN_CACHE_SIZE = 1_024;
+
+    public static final String EVENTBUS_QUERYBUILDER_STATS_ADDRESS = "query.builder.stats";
+
+    public static final String CONFIG_DATA_ACCESS_MODE = "data.access.mode";
+
+    public static final String DATA_ACCESS_LOCAL = "local";
+
+    public static final String DATA_ACCESS_EVENTBUS = "eventbus";
+
+    public static final String CONFIG_DB_POOL_SIZE = "db.pool.size";
+
+    public static final int DEFAULT_DB_POOL_SIZE = 10;
+
+    // -1 leaves the wait queue unbounded
+    public static final String CONFIG_DB_POOL_MAX_WAIT_QUEUE_SIZE = "db.pool.max.wait.queue.size";
+
+    public static final int DEFAULT_DB_POOL_MAX_WAIT_QUEUE_SIZE = -1;
+
+    // Commands in flight per connection of the pipelined client that carries request traffic
+    public static final String CONFIG_DB_PIPELINING_LIMIT = "db.pipelining.limit";
+
+    public static final int DEFAULT_DB_PIPELINING_LIMIT = 256;
+
+    // 0 disables the per-connection prepared statement cache
+    public static final String CONFIG_DB_PREPARED_STATEMENT_CACHE_SIZE = "db.prepared.statement.cache.size";
+
+    public static final int DEFAULT_DB_PREPARED_STATEMENT_CACHE_SIZE = 256;
+
+    // Connections of the metrics export pool, each held for the length of one streamed export
+    public static final String CONFIG_EXPORT_POOL_SIZE = "export.pool.size";
+
+    public static final int DEFAULT_EXPORT_POOL_SIZE = 4;
+
+    // -1 leaves the wait queue unbounded
+    public static final String CONFIG_EXPORT_POOL_MAX_WAIT_QUEUE_SIZE = "export.pool.max.wait.queue.size";
+
+    public static final int DEFAULT_EXPORT_POOL_MAX_WAIT_QUEUE_SIZE = -1;
+
+    public static final String CONFIG_DB_VERTICLE_INSTANCES = "db.verticle.instances";
+
+    public static final int DEFAULT_DB_VERTICLE_INSTANCES = 1;
+
+    public static final String EVENTBUS_DB_POOL_STATS_ADDRESS = "db.pool.stats";
 }
@@ -1,16 +1,13 @@
 package org.example.utils;
 
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.pgclient.PgConnectOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 
 public class Utils {
 
@@ -32,6 +29,16 @@ public class Utils {
         return sb.toString();
     }
 
+    public static PgConnectOptions getConnectOptions()
+    {
+        return new PgConnectOptions()
+                .setHost(Constants.DB_HOST)
+                .setPort(Integer.parseInt(Constants.DB_PORT))
+                .setDatabase(Constants.DB_NAME)
+                .setUser(Constants.DB_USER)
+                .setPassword(Constants.DB_PASSWORD);
+    }
+
     public static String getTableNameFromContext(RoutingContext context)
     {
         String path  = context.normalizedPath().split("/")[2];
@@ -48,6 +55,24 @@ public class Utils {
         };
     }
 
+    // Parses an ISO-8601 timestamp with offset, returning null when absent or malformed
+    public static OffsetDateTime parseTimestamp(String value)
+    {
+        if (value == null || value.isEmpty())
+        {
+            return null;
+        }
+
+        try
+        {
+            return OffsetDateTime.parse(value);
+        }
+        catch (DateTimeParseException exception)
+        {
+            return null;
+        }
+    }
+
     public static boolean isValidIPv4(String ip)
     {
         return ip != null && ip.matches(REGEX_IPV4);
@@ -63,6 +88,8 @@ public class Utils {
 
             case "discovery_profiles" -> validateDiscoveryProfiles(requestBody);
 
+            case "provisioning_jobs" -> validateProvisioningJobs(requestBody);
+
             default -> false;
         };
     }
@@ -90,115 +117,10 @@ public class Utils {
                 && requestBody.getValue("port") instanceof Integer;
     }
 
-    public static JsonArray runFping(JsonArray devices) {
-
-        var ipToIndexMap = new HashMap<String, Integer>();
-
-        var ipList = new ArrayList<String>();
-
-        // Step 1: Populate ipList and ipToIndexMap
-        for (int i = 0; i < devices.size(); i++)
-        {
-            String ip = devices.getJsonObject(i).getString("ip");
-
-            ipList.add(ip);
-
-            ipToIndexMap.put(ip, i); // IP to index mapping
-        }
-
-        // Step 2: Run fping on all IPs
-        var aliveIPs = new ArrayList<String>();
-
-        var aliveDevices = new JsonArray();
-
-        List<String> command = new ArrayList<>();
-        command.add("fping");
-        command.add("-c");
-        command.add("3");
-        command.add("-q");
-        command.add("-t");
-        command.add("500");
-        command.add("-p");
-        command.add("50");
-        command.addAll(ipList);
-
-        try
-        {
-            // Initialize ProcessBuilder
-            var process = new ProcessBuilder(command).start();
-
-            // Read from stderr (because fping -q outputs results to stderr)
-            var reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-
-            String line;
-
-            while ((line = reader.readLine()) != null)
-            {
-                // Example line: "192.168.1.1 : xmt/rcv/%loss = 3/3/0%, min/avg/max = 1.01/1.23/1.45"
-                if (!line.contains("100%"))
-                {
-                    aliveIPs.add(line.split(":")[0].trim());
-                }
-            }
-
-            process.waitFor(5, TimeUnit.SECONDS);
-
-        }
-        catch (Exception exception)
-        {
-            return aliveDevices;
-        }
-
-        for (var ip : aliveIPs)
-        {
-            aliveDevices.add(devices.getJsonObject(ipToIndexMap.get(ip)));
-        }
-
-        return aliveDevices;
-    }
-
-
-    public static String runGoPlugin(JsonArray devices , String mode)
+    private static boolean validateProvisioningJobs(JsonObject requestBody)
     {
-        var output = new StringBuilder();
-
-        try
-        {
-            var process = new ProcessBuilder("go/ssh-plugin", mode).start();
-
-            try (var writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream())))
-            {
-                writer.write(devices.toString());
-
-                writer.flush();
-            }
-
-            try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream())))
-            {
-                String line;
-
-                while ((line = reader.readLine()) != null)
-                {
-                    output.append(line);
-                }
-            }
-
-            var exitCode = process.waitFor();
-
-            if (exitCode != 0)
-            {
-                logger.warn("Plugin exited with non-zero code: {}",exitCode);
-
-                return "";
-            }
-        }
-        catch (Exception exception)
-        {
-            logger.error("Error during SSH discovery {}", exception.getMessage());
-
-            return "";
-        }
-
-        return output.toString();
+        return requestBody.size() == 1
+                && requestBody.getValue("polling_interval") instanceof Integer
+                && requestBody.getInteger("polling_interval") > 0;
     }
 }
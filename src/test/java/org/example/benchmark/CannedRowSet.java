@@ -0,0 +1,150 @@
+package org.example.benchmark;
+
+import io.vertx.pgclient.impl.RowImpl;
+import io.vertx.sqlclient.PropertyKind;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.desc.ColumnDescriptor;
+import io.vertx.sqlclient.impl.RowDesc;
+
+import java.sql.JDBCType;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * An in-memory result set of pg-client rows, for running the benchmarks without a database. The
+ * rows are real RowImpl instances, so everything downstream of the pool (QueryResult, the JSON
+ * writers, the event bus codecs) does exactly the work it does on a fetched result.
+ */
+class CannedRowSet implements RowSet<Row>
+{
+    private final List<String> columns;
+
+    private final List<Row> rows = new ArrayList<>();
+
+    private final RowDesc description;
+
+    CannedRowSet(String... columns)
+    {
+        this.columns = List.of(columns);
+
+        var descriptors = new ColumnDescriptor[columns.length];
+
+        for (int i = 0; i < columns.length; i++)
+        {
+            descriptors[i] = column(columns[i]);
+        }
+
+        description = new RowDesc(descriptors)
+        {
+        };
+    }
+
+    CannedRowSet add(Object... values)
+    {
+        var row = new RowImpl(description);
+
+        for (var value : values)
+        {
+            row.addValue(value);
+        }
+
+        rows.add(row);
+
+        return this;
+    }
+
+    @Override
+    public RowIterator<Row> iterator()
+    {
+        var iterator = rows.iterator();
+
+        return new RowIterator<>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Row next()
+            {
+                return iterator.next();
+            }
+        };
+    }
+
+    @Override
+    public int rowCount()
+    {
+        return rows.size();
+    }
+
+    @Override
+    public List<String> columnsNames()
+    {
+        return columns;
+    }
+
+    @Override
+    public List<ColumnDescriptor> columnDescriptors()
+    {
+        return description.columnDescriptor();
+    }
+
+    @Override
+    public int size()
+    {
+        return rows.size();
+    }
+
+    @Override
+    public <V> V property(PropertyKind<V> kind)
+    {
+        return null;
+    }
+
+    @Override
+    public RowSet<Row> value()
+    {
+        return this;
+    }
+
+    @Override
+    public RowSet<Row> next()
+    {
+        return null;
+    }
+
+    private static ColumnDescriptor column(String name)
+    {
+        return new ColumnDescriptor()
+        {
+            @Override
+            public String name()
+            {
+                return name;
+            }
+
+            @Override
+            public boolean isArray()
+            {
+                return false;
+            }
+
+            @Override
+            public String typeName()
+            {
+                return "unknown";
+            }
+
+            @Override
+            public JDBCType jdbcType()
+            {
+                return JDBCType.OTHER;
+            }
+        };
+    }
+}
@@ -0,0 +1,193 @@
+package org.example.benchmark;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.example.server.DBVerticle;
+import org.example.server.LocalCodec;
+import org.example.server.QueryCommand;
+import org.example.server.QueryResult;
+import org.example.service.DataAccess;
+import org.example.service.QueryBuilder;
+import org.example.service.QueryBuilderVerticle;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/*
+ * Compares p50/p99 latency and requests/sec of a CRUD select through the "eventbus" data access
+ * mode (QueryBuilderVerticle, then DBVerticle) against the in-process "local" mode, with a fixed
+ * number of requests in flight.
+ *
+ * Run against a database the server can connect to:
+ *   java -cp <classpath> org.example.benchmark.DataAccessLoadTest [requests] [concurrency]
+ * or, with "stub" as a third argument, without one: DBVerticle is replaced by StubDatabaseVerticle
+ * and the local mode answers from the same canned rows after building the query, so both modes
+ * pay everything but the database round trip, which is the same for either.
+ */
+public class DataAccessLoadTest
+{
+    private static final Logger logger = LoggerFactory.getLogger(DataAccessLoadTest.class);
+
+    private static final JsonObject REQUEST = new JsonObject()
+            .put(Constants.OPERATION, Constants.DB_SELECT)
+            .put(Constants.TABLE_NAME, "credential_profiles");
+
+    public static void main(String[] args) throws Exception
+    {
+        var requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        var concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        var stub = args.length > 2 && args[2].equals("stub");
+
+        var vertx = Vertx.vertx();
+
+        LocalCodec.registerQueryCodecs(vertx.eventBus());
+
+        var config = new JsonObject().put(Constants.CONFIG_SPOOL_DIR, Files.createTempDirectory("nms-benchmark-spool").toString());
+
+        var options = new DeploymentOptions().setConfig(config);
+
+        var rows = StubDatabaseVerticle.deviceRows(10);
+
+        var database = stub ? new StubDatabaseVerticle(rows) : new DBVerticle();
+
+        vertx.deployVerticle(database, options)
+                .compose(id -> vertx.deployVerticle(new QueryBuilderVerticle(), options))
+                .compose(id ->
+                {
+                    var eventBus = DataAccess.create(vertx, config.copy().put(Constants.CONFIG_DATA_ACCESS_MODE, Constants.DATA_ACCESS_EVENTBUS));
+
+                    var local = stub
+                            ? stubLocal(vertx, rows)
+                            : DataAccess.create(vertx, config.copy().put(Constants.CONFIG_DATA_ACCESS_MODE, Constants.DATA_ACCESS_LOCAL));
+
+                    return run(vertx, "eventbus warmup", requests / 5, concurrency, eventBus)
+                            .compose(v -> run(vertx, "local warmup", requests / 5, concurrency, local))
+                            .compose(v -> run(vertx, "eventbus", requests, concurrency, eventBus))
+                            .compose(v -> run(vertx, "local", requests, concurrency, local));
+                })
+                .onFailure(err -> logger.error("Load test failed: {}", err.getMessage()))
+                .onComplete(v -> vertx.close());
+    }
+
+    // The local mode with the pool replaced by the canned rows. The result is delivered from the
+    // event loop like a pool completion, rather than synchronously
+    private static DataAccess stubLocal(Vertx vertx, CannedRowSet rows)
+    {
+        var builder = new QueryBuilder(Constants.DEFAULT_QUERY_PLAN_CACHE_SIZE);
+
+        return new DataAccess()
+        {
+            @Override
+            public Future<QueryResult> execute(JsonObject request)
+            {
+                try
+                {
+                    return query(builder.build(request));
+                }
+                catch (IllegalArgumentException exception)
+                {
+                    return Future.failedFuture(exception);
+                }
+            }
+
+            @Override
+            public Future<QueryResult> query(QueryCommand command)
+            {
+                var promise = Promise.<QueryResult>promise();
+
+                vertx.getOrCreateContext().runOnContext(v -> promise.complete(new QueryResult(rows)));
+
+                return promise.future();
+            }
+
+            @Override
+            public Future<JsonObject> getBuilderStats()
+            {
+                return Future.succeededFuture(builder.getStats());
+            }
+        };
+    }
+
+    // Everything runs on one context, so the latency array needs no synchronisation
+    private static Future<Void> run(Vertx vertx, String name, int requests, int concurrency, DataAccess dataAccess)
+    {
+        var promise = Promise.<Void>promise();
+
+        var context = vertx.getOrCreateContext();
+
+        context.runOnContext(v ->
+        {
+            var latencies = new long[requests];
+
+            var state = new int[] { 0, 0 }; // issued, completed
+
+            var start = System.nanoTime();
+
+            var issuer = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (state[0] >= requests)
+                    {
+                        return;
+                    }
+
+                    var index = state[0]++;
+
+                    var sent = System.nanoTime();
+
+                    dataAccess.execute(REQUEST).onComplete(result ->
+                    {
+                        if (result.failed())
+                        {
+                            promise.tryFail(result.cause());
+
+                            return;
+                        }
+
+                        latencies[index] = System.nanoTime() - sent;
+
+                        if (++state[1] == requests)
+                        {
+                            report(name, latencies, System.nanoTime() - start);
+
+                            promise.tryComplete();
+                        }
+                        else
+                        {
+                            run();
+                        }
+                    });
+                }
+            };
+
+            for (int i = 0; i < Math.min(concurrency, requests); i++)
+            {
+                issuer.run();
+            }
+        });
+
+        return promise.future();
+    }
+
+    private static void report(String name, long[] latencies, long elapsed)
+    {
+        Arrays.sort(latencies);
+
+        var seconds = elapsed / 1e9;
+
+        logger.info("{}: {} requests in {} s, {} req/sec, p50 {} ms, p99 {} ms", name, latencies.length,
+                String.format("%.2f", seconds), String.format("%.0f", latencies.length / seconds),
+                String.format("%.3f", latencies[latencies.length / 2] / 1e6),
+                String.format("%.3f", latencies[(int) (latencies.length * 0.99)] / 1e6));
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.benchmark;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Tuple;
+import org.example.server.DBVerticle;
+import org.example.server.LocalCodec;
+import org.example.server.QueryCommand;
+import org.example.server.QueryResult;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/*
+ * Compares bytes allocated per request (across all JVM threads) and requests/sec of the JSON
+ * event-bus protocol of DBVerticle ({"query", "params"} -> {"success", "data"}, copied at every
+ * hop) against the typed QueryCommand/QueryResult protocol passed by reference with LocalCodec.
+ * Both return the same rows as a JsonArray at the end, as an HTTP handler would need.
+ *
+ * Run against a database the server can connect to:
+ *   java -cp <classpath> org.example.benchmark.EventBusCodecBenchmark [requests] [rowsPerRequest]
+ * or, with "stub" as a third argument, against StubDatabaseVerticle, which answers from an in-memory
+ * result set of the same shape and so leaves only the protocol cost to measure.
+ */
+public class EventBusCodecBenchmark
+{
+    private static final Logger logger = LoggerFactory.getLogger(EventBusCodecBenchmark.class);
+
+    private static final String QUERY_ROWS = """
+            SELECT g AS id, '10.0.' || (g / 256) || '.' || (g % 256) AS ip, 22 AS port, g % 2 = 0 AS status
+            FROM generate_series(1, $1::int) AS g
+        """;
+
+    public static void main(String[] args) throws Exception
+    {
+        var requests = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        var rows = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        var stub = args.length > 2 && args[2].equals("stub");
+
+        var vertx = Vertx.vertx();
+
+        LocalCodec.registerQueryCodecs(vertx.eventBus());
+
+        var config = new JsonObject().put(Constants.CONFIG_SPOOL_DIR, Files.createTempDirectory("nms-benchmark-spool").toString());
+
+        Supplier<Future<JsonArray>> json = () -> vertx.eventBus()
+                .<JsonObject>request(Constants.EVENTBUS_DATABASE_ADDRESS, new JsonObject()
+                        .put(Constants.QUERY, QUERY_ROWS)
+                        .put(Constants.PARAMS, new JsonArray().add(rows)))
+                .map(reply -> reply.body().getJsonArray(Constants.DATA));
+
+        Supplier<Future<JsonArray>> typed = () -> vertx.eventBus()
+                .<QueryResult>request(Constants.EVENTBUS_DATABASE_ADDRESS, new QueryCommand(QUERY_ROWS, Tuple.of(rows)))
+                .map(reply -> reply.body().toJsonArray());
+
+        var database = stub ? new StubDatabaseVerticle(StubDatabaseVerticle.deviceRows(rows)) : new DBVerticle();
+
+        vertx.deployVerticle(database, new DeploymentOptions().setConfig(config))
+                .compose(id -> run("json warmup", requests / 5, json))
+                .compose(v -> run("typed warmup", requests / 5, typed))
+                .compose(v -> run("json", requests, json))
+                .compose(v -> run("typed", requests, typed))
+                .onFailure(err -> logger.error("Benchmark failed: {}", err.getMessage()))
+                .onComplete(v -> vertx.close());
+    }
+
+    private static Future<Void> run(String name, int requests, Supplier<Future<JsonArray>> request)
+    {
+        var allocatedBefore = allocatedBytes();
+
+        var start = System.nanoTime();
+
+        return sequence(requests, request).onSuccess(v ->
+        {
+            var seconds = (System.nanoTime() - start) / 1e9;
+
+            logger.info("{}: {} requests in {} s, {} req/sec, {} bytes allocated per request", name, requests,
+                    String.format("%.2f", seconds), String.format("%.0f", requests / seconds),
+                    (allocatedBytes() - allocatedBefore) / requests);
+        });
+    }
+
+    // One request at a time, so allocation is attributable to the protocol rather than to queueing.
+    // Each request is issued from the previous reply's callback instead of a compose chain, which
+    // would complete as one nested call per request and overflow the stack
+    private static Future<Void> sequence(int requests, Supplier<Future<JsonArray>> request)
+    {
+        var promise = Promise.<Void>promise();
+
+        next(requests, request, promise);
+
+        return promise.future();
+    }
+
+    private static void next(int remaining, Supplier<Future<JsonArray>> request, Promise<Void> promise)
+    {
+        if (remaining == 0)
+        {
+            promise.complete();
+
+            return;
+        }
+
+        request.get().onComplete(result ->
+        {
+            if (result.failed())
+            {
+                promise.fail(result.cause());
+
+                return;
+            }
+
+            next(remaining - 1, request, promise);
+        });
+    }
+
+    private static long allocatedBytes()
+    {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds())).filter(bytes -> bytes > 0).sum();
+    }
+}
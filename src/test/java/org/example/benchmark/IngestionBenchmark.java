@@ -0,0 +1,147 @@
+package org.example.benchmark;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgBuilder;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Tuple;
+import org.example.server.MetricsWriter;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Compares rows/sec of the old per-row prepared batch insert (executeBatch with one Tuple per row)
+ * against the bulk unnest insert used by MetricsWriter, writing into the real provisioned_data table.
+ *
+ * Run against a database the server has initialised at least once:
+ *   java -cp <classpath> org.example.benchmark.IngestionBenchmark [rows] [rowsPerFlush]
+ *
+ * A throwaway provisioning job owns the generated rows and is deleted (with its rows) at the end.
+ */
+public class IngestionBenchmark
+{
+    private static final Logger logger = LoggerFactory.getLogger(IngestionBenchmark.class);
+
+    private static final String BENCHMARK_IP = "198.51.100.254";
+
+    private static final String QUERY_CREATE_JOB = """
+            INSERT INTO provisioning_jobs (ip, port) VALUES ($1, 22)
+            ON CONFLICT (ip) DO UPDATE SET port = 22
+            RETURNING id
+        """;
+
+    private static final String QUERY_BATCH_INSERT = """
+            INSERT INTO provisioned_data (job_id, data, polled_at)
+            VALUES ($1, $2, $3::timestamptz)
+        """;
+
+    public static void main(String[] args)
+    {
+        var rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        var flushRows = args.length > 1 ? Integer.parseInt(args[1]) : Constants.DEFAULT_INGESTION_FLUSH_ROWS;
+
+        var vertx = Vertx.vertx();
+
+        var client = PgBuilder.pool()
+                .with(new PoolOptions().setMaxSize(4))
+                .connectingTo(new PgConnectOptions()
+                        .setHost(Constants.DB_HOST)
+                        .setPort(Integer.parseInt(Constants.DB_PORT))
+                        .setDatabase(Constants.DB_NAME)
+                        .setUser(Constants.DB_USER)
+                        .setPassword(Constants.DB_PASSWORD))
+                .using(vertx)
+                .build();
+
+        client.preparedQuery(QUERY_CREATE_JOB).execute(Tuple.of(BENCHMARK_IP))
+                .compose(rows ->
+                {
+                    var jobId = rows.iterator().next().getInteger(Constants.ID);
+
+                    var results = generateResults(jobId, rowCount);
+
+                    return run("batch insert", results, flushRows, chunk -> batchInsert(client, chunk))
+                            .compose(v -> run("bulk unnest insert", results, flushRows, chunk -> MetricsWriter.insert(client, chunk)))
+                            .eventually(() -> client.preparedQuery("DELETE FROM provisioning_jobs WHERE id = $1").execute(Tuple.of(jobId)));
+                })
+                .onFailure(err -> logger.error("Benchmark failed: {}", err.getMessage()))
+                .eventually(() -> client.close())
+                .onComplete(v -> vertx.close());
+    }
+
+    private interface Writer
+    {
+        Future<Void> write(List<JsonObject> chunk);
+    }
+
+    private static Future<Void> run(String name, List<JsonObject> results, int flushRows, Writer writer)
+    {
+        var start = System.nanoTime();
+
+        return writeChunks(results, 0, flushRows, writer)
+                .onSuccess(v ->
+                {
+                    var seconds = (System.nanoTime() - start) / 1e9;
+
+                    logger.info("{}: {} rows in {} s, {} rows/sec", name, results.size(),
+                            String.format("%.2f", seconds), String.format("%.0f", results.size() / seconds));
+                });
+    }
+
+    // Chunks are written one after another, as a single flushing writer would
+    private static Future<Void> writeChunks(List<JsonObject> results, int from, int flushRows, Writer writer)
+    {
+        if (from >= results.size())
+        {
+            return Future.succeededFuture();
+        }
+
+        var to = Math.min(results.size(), from + flushRows);
+
+        return writer.write(results.subList(from, to))
+                .compose(v -> writeChunks(results, to, flushRows, writer));
+    }
+
+    private static Future<Void> batchInsert(Pool client, List<JsonObject> chunk)
+    {
+        var batch = new ArrayList<Tuple>(chunk.size());
+
+        for (var result : chunk)
+        {
+            batch.add(Tuple.of(result.getInteger(Constants.ID), result.getJsonObject(Constants.DATA), result.getString(Constants.POLLED_AT)));
+        }
+
+        return client.preparedQuery(QUERY_BATCH_INSERT).executeBatch(batch).mapEmpty();
+    }
+
+    private static List<JsonObject> generateResults(int jobId, int rowCount)
+    {
+        var results = new ArrayList<JsonObject>(rowCount);
+
+        // Moves forward in time: partitions exist for today and the days ahead, not for the past
+        var now = OffsetDateTime.now();
+
+        for (int i = 0; i < rowCount; i++)
+        {
+            results.add(new JsonObject()
+                    .put(Constants.ID, jobId)
+                    .put(Constants.POLLED_AT, now.plusNanos(i * 1_000L).toString())
+                    .put(Constants.DATA, new JsonObject()
+                            .put("cpu_usage", i % 100)
+                            .put("memory_used", 1_000_000L + i)
+                            .put("disk_free", 50 - i % 50)
+                            .put("uptime", 86_400 + i)));
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.Tuple;
+import org.example.server.DatabasePool;
+import org.example.server.PooledJsonOutput;
+import org.example.server.QueryResult;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/*
+ * Compares bytes allocated and time per result set of the two ways a getAll result reaches the
+ * HTTP response: QueryResult.toJsonArray() wrapped in a JsonObject and encodePrettily(), against
+ * QueryResult.writeJson() straight into a PooledJsonOutput. Only serialization is measured; the
+ * result set is fetched once up front.
+ *
+ * Run against a database the server can connect to:
+ *   java -cp <classpath> org.example.benchmark.RowSerializationBenchmark [iterations] [rows]
+ */
+public class RowSerializationBenchmark
+{
+    private static final Logger logger = LoggerFactory.getLogger(RowSerializationBenchmark.class);
+
+    private static final String QUERY_ROWS = """
+            SELECT g AS id, '10.0.' || (g / 256) || '.' || (g % 256) AS ip, 22 AS port, now() AS polled_at,
+                   jsonb_build_object('cpu_usage', g % 100, 'memory_used', 1000000 + g, 'hostname', 'host-' || g) AS data
+            FROM generate_series(1, $1::int) AS g
+        """;
+
+    private interface Serializer
+    {
+        int serialize(QueryResult result) throws IOException;
+    }
+
+    public static void main(String[] args)
+    {
+        var iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        var rows = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        var vertx = Vertx.vertx();
+
+        Pool client = DatabasePool.create(vertx, new JsonObject());
+
+        Serializer json = result -> new JsonObject()
+                .put(Constants.SUCCESS, true)
+                .put(Constants.DATA, result.toJsonArray())
+                .encodePrettily()
+                .length();
+
+        Serializer pooled = result ->
+        {
+            var output = new PooledJsonOutput();
+
+            try
+            {
+                var generator = output.getGenerator();
+
+                generator.writeStartObject();
+
+                generator.writeBooleanField(Constants.SUCCESS, true);
+
+                generator.writeFieldName(Constants.DATA);
+
+                result.writeJson(generator);
+
+                generator.writeEndObject();
+
+                return output.size();
+            }
+            finally
+            {
+                output.release();
+            }
+        };
+
+        client.preparedQuery(QUERY_ROWS).execute(Tuple.of(rows))
+                .map(QueryResult::new)
+                .onSuccess(result ->
+                {
+                    try
+                    {
+                        run("json warmup", iterations / 5, result, json);
+
+                        run("pooled warmup", iterations / 5, result, pooled);
+
+                        run("json", iterations, result, json);
+
+                        run("pooled", iterations, result, pooled);
+                    }
+                    catch (IOException exception)
+                    {
+                        logger.error("Benchmark failed: {}", exception.getMessage());
+                    }
+                })
+                .onFailure(err -> logger.error("Benchmark failed: {}", err.getMessage()))
+                .eventually(() -> client.close())
+                .onComplete(v -> vertx.close());
+    }
+
+    private static void run(String name, int iterations, QueryResult result, Serializer serializer) throws IOException
+    {
+        var allocatedBefore = allocatedBytes();
+
+        var start = System.nanoTime();
+
+        var bytes = 0;
+
+        for (int i = 0; i < iterations; i++)
+        {
+            bytes = serializer.serialize(result);
+        }
+
+        var seconds = (System.nanoTime() - start) / 1e9;
+
+        logger.info("{}: {} rows x {} in {} s, {} ms per result set, {} bytes of output, {} bytes allocated per result set",
+                name, result.size(), iterations, String.format("%.2f", seconds), String.format("%.2f", seconds * 1000 / iterations),
+                bytes, (allocatedBytes() - allocatedBefore) / iterations);
+    }
+
+    private static long allocatedBytes()
+    {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds())).filter(bytes -> bytes > 0).sum();
+    }
+}
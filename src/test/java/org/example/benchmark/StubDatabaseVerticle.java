@@ -0,0 +1,60 @@
+package org.example.benchmark;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Tuple;
+import org.example.server.QueryCommand;
+import org.example.server.QueryResult;
+import org.example.utils.Constants;
+
+/*
+ * Stands in for DBVerticle on EVENTBUS_DATABASE_ADDRESS, answering both protocols from one canned
+ * result set instead of a database: a QueryCommand gets a QueryResult by reference, a
+ * {"query", "params"} request gets {"success", "data"} with the rows converted to JSON, as
+ * DBVerticle does. What is left to measure is the protocol, not the query.
+ */
+class StubDatabaseVerticle extends AbstractVerticle
+{
+    private final CannedRowSet rows;
+
+    StubDatabaseVerticle(CannedRowSet rows)
+    {
+        this.rows = rows;
+    }
+
+    static CannedRowSet deviceRows(int count)
+    {
+        var rows = new CannedRowSet("id", "ip", "port", "status");
+
+        for (int i = 1; i <= count; i++)
+        {
+            rows.add(i, "10.0." + (i / 256) + "." + (i % 256), 22, i % 2 == 0);
+        }
+
+        return rows;
+    }
+
+    @Override
+    public void start()
+    {
+        vertx.eventBus().consumer(Constants.EVENTBUS_DATABASE_ADDRESS, message ->
+        {
+            if (message.body() instanceof QueryCommand)
+            {
+                message.reply(new QueryResult(rows));
+
+                return;
+            }
+
+            var input = (JsonObject) message.body();
+
+            // DBVerticle turns the JSON parameters into a tuple before running the query
+            Tuple.from(input.getJsonArray(Constants.PARAMS, new JsonArray()).getList());
+
+            message.reply(new JsonObject()
+                    .put(Constants.SUCCESS, true)
+                    .put(Constants.DATA, new QueryResult(rows).toJsonArray()));
+        });
+    }
+}
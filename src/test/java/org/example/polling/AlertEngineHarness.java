@@ -0,0 +1,311 @@
+package org.example.polling;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Feeds AlertEngine scripted device results and checks the state changes it publishes on
+ * EVENTBUS_ALERT_ADDRESS: when a rule raises and clears, what leaves a streak alone, which rules
+ * are skipped, and what drop and dropAll clear. Events are compared as "<id> <rule> <state>".
+ *
+ *   java -cp <classpath> org.example.polling.AlertEngineHarness
+ *
+ * Exits with status 1 if any scenario publishes something other than expected.
+ */
+public class AlertEngineHarness
+{
+    private static final Logger logger = LoggerFactory.getLogger(AlertEngineHarness.class);
+
+    // Publishing is asynchronous; a scenario's events are all in once none arrived for this long
+    private static final long SETTLE_MS = 100;
+
+    private static final JsonObject CPU_HIGH = rule("cpu-high", "cpu_usage", ">", 90, 3);
+
+    private static final JsonObject MEMORY_HIGH = rule("memory-high", "memory_used", ">=", 80, 1);
+
+    private interface Script
+    {
+        void run(AlertEngine engine);
+    }
+
+    private static final List<String> events = new ArrayList<>();
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception
+    {
+        var vertx = Vertx.vertx();
+
+        vertx.eventBus().<JsonObject>consumer(Constants.EVENTBUS_ALERT_ADDRESS, message ->
+        {
+            var event = message.body();
+
+            synchronized (events)
+            {
+                events.add(event.getInteger(Constants.ID) + " " + event.getString("rule") + " " + event.getString("state"));
+            }
+        });
+
+        try
+        {
+            var rules = new JsonArray().add(CPU_HIGH);
+
+            check(vertx, "raises on the consecutive-th breach", rules, engine ->
+            {
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+            }, List.of("1 cpu-high raised"));
+
+            check(vertx, "a streak broken before consecutive raises nothing", rules, engine ->
+            {
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 50);
+
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+            }, List.of());
+
+            check(vertx, "no second raise while still breaching", rules, engine ->
+            {
+                for (int i = 0; i < 6; i++)
+                {
+                    evaluate(engine, 1, 95 + i);
+                }
+            }, List.of("1 cpu-high raised"));
+
+            check(vertx, "clears on the first result that does not breach", rules, engine ->
+            {
+                for (int i = 0; i < 4; i++)
+                {
+                    evaluate(engine, 1, 95);
+                }
+
+                evaluate(engine, 1, 90);
+
+                evaluate(engine, 1, 10);
+            }, List.of("1 cpu-high raised", "1 cpu-high cleared"));
+
+            check(vertx, "results without the metric leave the streak untouched", rules, engine ->
+            {
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+
+                engine.evaluate(result(1, new JsonObject().put("memory_used", 10)));
+
+                engine.evaluate(result(1, new JsonObject()));
+
+                evaluate(engine, 1, 95);
+
+                // Nor do they clear a firing rule
+                engine.evaluate(result(1, new JsonObject().put("memory_used", 10)));
+            }, List.of("1 cpu-high raised"));
+
+            check(vertx, "non-numeric values are ignored", rules, engine ->
+            {
+                evaluate(engine, 1, 95);
+
+                engine.evaluate(result(1, new JsonObject().put("cpu_usage", "high")));
+
+                evaluate(engine, 1, 95);
+
+                engine.evaluate(result(1, new JsonObject().putNull("cpu_usage")));
+
+                evaluate(engine, 1, 95);
+
+                engine.evaluate(result(1, new JsonObject().put("cpu_usage", "low")));
+            }, List.of("1 cpu-high raised"));
+
+            check(vertx, "devices keep separate streaks", rules, engine ->
+            {
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 2, 95);
+
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 2, 50);
+
+                evaluate(engine, 1, 95);
+            }, List.of("1 cpu-high raised"));
+
+            checkInvalidRules(vertx);
+
+            var twoRules = new JsonArray().add(CPU_HIGH).add(MEMORY_HIGH);
+
+            check(vertx, "drop clears only the rules still firing", twoRules, engine ->
+            {
+                for (int i = 0; i < 3; i++)
+                {
+                    engine.evaluate(result(1, new JsonObject().put("cpu_usage", 95).put("memory_used", 85)));
+                }
+
+                // memory-high clears on its own, cpu-high is still firing when the device is dropped
+                engine.evaluate(result(1, new JsonObject().put("memory_used", 20)));
+
+                engine.drop(1);
+
+                // Already gone, and never seen
+                engine.drop(1);
+
+                engine.drop(7);
+            }, List.of("1 memory-high raised", "1 cpu-high raised", "1 memory-high cleared", "1 cpu-high cleared"));
+
+            check(vertx, "a dropped device starts its streaks over", rules, engine ->
+            {
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+
+                engine.drop(1);
+
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+
+                evaluate(engine, 1, 95);
+            }, List.of("1 cpu-high raised"));
+
+            check(vertx, "dropAll clears every device with a firing rule", twoRules, engine ->
+            {
+                evaluate(engine, 1, 95);
+
+                engine.evaluate(result(2, new JsonObject().put("memory_used", 90)));
+
+                engine.evaluate(result(3, new JsonObject().put("memory_used", 10)));
+
+                engine.dropAll();
+
+                // Nothing left to clear
+                engine.dropAll();
+            }, List.of("2 memory-high raised", "2 memory-high cleared"));
+        }
+        finally
+        {
+            vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+
+        if (failures > 0)
+        {
+            logger.error("{} scenarios failed", failures);
+
+            System.exit(1);
+        }
+
+        logger.info("All scenarios published exactly the expected state changes");
+    }
+
+    private static void check(Vertx vertx, String name, JsonArray rules, Script script, List<String> expected) throws InterruptedException
+    {
+        synchronized (events)
+        {
+            events.clear();
+        }
+
+        script.run(new AlertEngine(vertx.eventBus(), rules));
+
+        report(name, settle(), expected);
+    }
+
+    // Broken rules are skipped one by one; the valid one after them still compiles and fires
+    private static void checkInvalidRules(Vertx vertx) throws InterruptedException
+    {
+        var rules = new JsonArray()
+                .add(new JsonObject().put("metric", "cpu_usage").put("threshold", 1))
+                .add(rule("no-metric", null, ">", 1, 1))
+                .add(new JsonObject().put("name", "no-threshold").put("metric", "cpu_usage"))
+                .add(rule("bad-operator", "cpu_usage", "~", 1, 1))
+                .add(rule("zero-consecutive", "cpu_usage", ">", 1, 0))
+                .add(rule("cpu-any", "cpu_usage", ">", 0, 1));
+
+        var engine = new AlertEngine(vertx.eventBus(), rules);
+
+        if (engine.getRuleCount() != 1)
+        {
+            logger.error("invalid rules are skipped: compiled {} rules, expected 1", engine.getRuleCount());
+
+            failures++;
+        }
+
+        synchronized (events)
+        {
+            events.clear();
+        }
+
+        evaluate(engine, 1, 5);
+
+        report("invalid rules are skipped", settle(), List.of("1 cpu-any raised"));
+    }
+
+    private static List<String> settle() throws InterruptedException
+    {
+        var seen = -1;
+
+        while (true)
+        {
+            Thread.sleep(SETTLE_MS);
+
+            synchronized (events)
+            {
+                if (events.size() == seen)
+                {
+                    return new ArrayList<>(events);
+                }
+
+                seen = events.size();
+            }
+        }
+    }
+
+    private static void report(String name, List<String> published, List<String> expected)
+    {
+        if (published.equals(expected))
+        {
+            logger.info("{}: {} as expected", name, published);
+
+            return;
+        }
+
+        logger.error("{}: published {}, expected {}", name, published, expected);
+
+        failures++;
+    }
+
+    private static void evaluate(AlertEngine engine, int id, double cpuUsage)
+    {
+        engine.evaluate(result(id, new JsonObject().put("cpu_usage", cpuUsage)));
+    }
+
+    private static JsonObject result(int id, JsonObject data)
+    {
+        return new JsonObject()
+                .put(Constants.ID, id)
+                .put(Constants.DATA, data)
+                .put(Constants.POLLED_AT, "2026-01-01T00:00:00Z");
+    }
+
+    private static JsonObject rule(String name, String metric, String operator, double threshold, int consecutive)
+    {
+        return new JsonObject()
+                .put("name", name)
+                .put("metric", metric)
+                .put("operator", operator)
+                .put("threshold", threshold)
+                .put("consecutive", consecutive);
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.reachability;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetServer;
+import org.example.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Sweeps a batch of loopback devices through ReachabilityEngine with the default tcp probe and
+ * checks that exactly the devices on a listening port come back reachable. Half the devices point
+ * at a NetServer started here, the other half at a port nothing listens on; addresses are spread
+ * over 127.0.0.0/8, which Linux answers on as a whole.
+ *
+ *   java -cp <classpath> org.example.reachability.ReachabilityHarness [devices] [concurrency]
+ *
+ * Exits with status 1 if the reachable set differs from the listening half.
+ */
+public class ReachabilityHarness
+{
+    private static final Logger logger = LoggerFactory.getLogger(ReachabilityHarness.class);
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception
+    {
+        var deviceCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        var concurrency = args.length > 1 ? Integer.parseInt(args[1]) : Constants.DEFAULT_REACHABILITY_CONCURRENCY;
+
+        var vertx = Vertx.vertx();
+
+        var failed = false;
+
+        try
+        {
+            var server = listen(vertx);
+
+            var closedPort = freePort();
+
+            var devices = new JsonArray();
+
+            var expected = new HashSet<String>();
+
+            for (int i = 0; i < deviceCount; i++)
+            {
+                var ip = "127." + (1 + i / (254 * 256)) + "." + (i / 254 % 256) + "." + (1 + i % 254);
+
+                var open = i % 2 == 0;
+
+                devices.add(new JsonObject().put(Constants.IP, ip).put(Constants.PORT, open ? server.actualPort() : closedPort));
+
+                if (open)
+                {
+                    expected.add(ip + ":" + server.actualPort());
+                }
+            }
+
+            var engine = new ReachabilityEngine(vertx, new JsonObject().put(Constants.CONFIG_REACHABILITY_CONCURRENCY, concurrency));
+
+            for (int round = 1; round <= ROUNDS; round++)
+            {
+                var startedAt = System.nanoTime();
+
+                var reachable = new CompletableFuture<JsonArray>();
+
+                // Run from an event loop, as DiscoveryService does
+                vertx.runOnContext(v -> engine.filterReachable(devices).onComplete(ar ->
+                {
+                    if (ar.succeeded())
+                    {
+                        reachable.complete(ar.result());
+                    }
+                    else
+                    {
+                        reachable.completeExceptionally(ar.cause());
+                    }
+                }));
+
+                var alive = reachable.get(5, TimeUnit.MINUTES);
+
+                var elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+                var found = new HashSet<String>();
+
+                alive.forEach(device -> found.add(((JsonObject) device).getString(Constants.IP) + ":" + ((JsonObject) device).getInteger(Constants.PORT)));
+
+                if (found.equals(expected))
+                {
+                    logger.info("round {}: {} probes at concurrency {} in {} ms, {} reachable as expected",
+                            round, deviceCount, concurrency, elapsedMs, found.size());
+                }
+                else
+                {
+                    logger.error("round {}: {} reachable, expected {}", round, found.size(), expected.size());
+
+                    failed = true;
+                }
+            }
+        }
+        finally
+        {
+            vertx.close().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+
+        if (failed)
+        {
+            System.exit(1);
+        }
+    }
+
+    // Accepts and closes, which is all a tcp probe waits for
+    private static NetServer listen(Vertx vertx) throws Exception
+    {
+        return vertx.createNetServer()
+                .connectHandler(socket -> socket.close())
+                .listen(0, "0.0.0.0")
+                .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    // Bound and released, so nothing listens on it while the sweep runs
+    private static int freePort() throws IOException
+    {
+        try (var socket = new ServerSocket(0))
+        {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.example.server;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Damages a MetricsSpool on disk the ways a crash or a bad disk would and checks what a reopened
+ * spool recovers: exactly the records that are still intact, in order, and nothing else. Records
+ * are all the same size, so the expected survivors of each kind of damage follow from offsets.
+ *
+ *   java -cp <classpath> org.example.server.SpoolRecoveryHarness
+ *
+ * Exits with status 1 if any scenario recovers something other than expected.
+ */
+public class SpoolRecoveryHarness
+{
+    private static final Logger logger = LoggerFactory.getLogger(SpoolRecoveryHarness.class);
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    private static final long MAX_BYTES = 64L * SEGMENT_BYTES;
+
+    private static final int RECORDS = 3_000;
+
+    private static final int RECORD_BYTES = 8 + record(0).encode().getBytes(StandardCharsets.UTF_8).length;
+
+    private static final int RECORDS_PER_SEGMENT = SEGMENT_BYTES / RECORD_BYTES;
+
+    private interface Damage
+    {
+        void apply(Path directory, List<Path> segments) throws IOException;
+    }
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException
+    {
+        logger.info("{} records of {} bytes, {} per {} byte segment", RECORDS, RECORD_BYTES, RECORDS_PER_SEGMENT, SEGMENT_BYTES);
+
+        var all = range(0, RECORDS);
+
+        check("clean reopen", (directory, segments) -> {}, all);
+
+        // The last segment loses its tail in the middle of the 10th record it holds
+        var lastSegmentStart = (RECORDS / RECORDS_PER_SEGMENT) * RECORDS_PER_SEGMENT;
+
+        check("last segment truncated mid-record", (directory, segments) ->
+                truncate(segments.get(segments.size() - 1), 9L * RECORD_BYTES + RECORD_BYTES / 2), range(0, lastSegmentStart + 9));
+
+        // A flipped payload byte in the 5th record of the second segment ends that segment there
+        check("payload byte flipped", (directory, segments) ->
+                flip(segments.get(1), 4L * RECORD_BYTES + 20), concat(range(0, RECORDS_PER_SEGMENT + 4), range(2 * RECORDS_PER_SEGMENT, RECORDS)));
+
+        // A torn length field (the record's length written, its payload not) fails the CRC the same way
+        check("length field corrupted", (directory, segments) ->
+                flip(segments.get(2), 7L * RECORD_BYTES + 1), concat(range(0, 2 * RECORDS_PER_SEGMENT + 7), range(3 * RECORDS_PER_SEGMENT, RECORDS)));
+
+        check("middle segment deleted", (directory, segments) -> Files.delete(segments.get(1)),
+                concat(range(0, RECORDS_PER_SEGMENT), range(2 * RECORDS_PER_SEGMENT, RECORDS)));
+
+        check("middle segment truncated to zero bytes", (directory, segments) -> truncate(segments.get(1), 0),
+                concat(range(0, RECORDS_PER_SEGMENT), range(2 * RECORDS_PER_SEGMENT, RECORDS)));
+
+        check("checkpoint garbage", (directory, segments) -> Files.writeString(directory.resolve("checkpoint"), "not a checkpoint"), all);
+
+        checkResume();
+
+        checkAppendAfterTornTail();
+
+        if (failures > 0)
+        {
+            logger.error("{} scenarios failed", failures);
+
+            System.exit(1);
+        }
+
+        logger.info("All scenarios recovered exactly the intact records");
+    }
+
+    private static void check(String name, Damage damage, List<Integer> expected) throws IOException
+    {
+        var directory = Files.createTempDirectory("nms-spool-harness");
+
+        try
+        {
+            var spool = new MetricsSpool(directory, SEGMENT_BYTES, MAX_BYTES);
+
+            spool.open();
+
+            append(spool, 0, RECORDS);
+
+            damage.apply(directory, segments(directory));
+
+            report(name, drain(reopen(directory)), expected);
+        }
+        catch (IOException | RuntimeException | InternalError exception)
+        {
+            logger.error("{}: reopening failed: {}", name, exception.toString());
+
+            failures++;
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    // A checkpointed read position survives a restart, so nothing committed is replayed again
+    private static void checkResume() throws IOException
+    {
+        var directory = Files.createTempDirectory("nms-spool-harness");
+
+        try
+        {
+            var spool = new MetricsSpool(directory, SEGMENT_BYTES, MAX_BYTES);
+
+            spool.open();
+
+            append(spool, 0, RECORDS);
+
+            spool.peek(1_000);
+
+            spool.commit();
+
+            report("resume after 1000 committed", drain(reopen(directory)), range(1_000, RECORDS));
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    // Records appended after recovering from a torn tail follow the last intact record, and the
+    // torn bytes never resurface between them
+    private static void checkAppendAfterTornTail() throws IOException
+    {
+        var directory = Files.createTempDirectory("nms-spool-harness");
+
+        try
+        {
+            var spool = new MetricsSpool(directory, SEGMENT_BYTES, MAX_BYTES);
+
+            spool.open();
+
+            append(spool, 0, 100);
+
+            truncate(segments(directory).get(0), 50L * RECORD_BYTES + 3);
+
+            var reopened = reopen(directory);
+
+            append(reopened, 100, 200);
+
+            report("append after torn tail", drain(reopen(directory)), concat(range(0, 50), range(100, 200)));
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    private static void report(String name, List<Integer> recovered, List<Integer> expected)
+    {
+        if (recovered.equals(expected))
+        {
+            logger.info("{}: recovered {} of {} records, as expected", name, recovered.size(), RECORDS);
+
+            return;
+        }
+
+        logger.error("{}: recovered {} records {}..{}, expected {} records {}..{}", name,
+                recovered.size(), first(recovered), last(recovered), expected.size(), first(expected), last(expected));
+
+        failures++;
+    }
+
+    private static MetricsSpool reopen(Path directory) throws IOException
+    {
+        var spool = new MetricsSpool(directory, SEGMENT_BYTES, MAX_BYTES);
+
+        spool.open();
+
+        return spool;
+    }
+
+    private static void append(MetricsSpool spool, int from, int to) throws IOException
+    {
+        var rows = new ArrayList<JsonObject>();
+
+        for (int i = from; i < to; i++)
+        {
+            rows.add(record(i));
+        }
+
+        spool.append(rows);
+    }
+
+    private static List<Integer> drain(MetricsSpool spool) throws IOException
+    {
+        var sequence = new ArrayList<Integer>();
+
+        List<JsonObject> batch;
+
+        while (!(batch = spool.peek(500)).isEmpty())
+        {
+            batch.forEach(row -> sequence.add(Integer.parseInt(row.getString("seq"))));
+
+            spool.commit();
+        }
+
+        return sequence;
+    }
+
+    // Fixed width, so every record takes RECORD_BYTES
+    private static JsonObject record(int sequence)
+    {
+        return new JsonObject()
+                .put("seq", String.format("%06d", sequence))
+                .put("id", 1)
+                .put("polled_at", "2026-01-01T00:00:00Z")
+                .put("data", new JsonObject().put("cpu_usage", 42.5).put("memory_used", 1_000_000));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException
+    {
+        try (var files = Files.list(directory))
+        {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-"))
+                    .sorted(Comparator.comparing(Path::toString))
+                    .toList();
+        }
+    }
+
+    private static void truncate(Path file, long size) throws IOException
+    {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.truncate(size);
+        }
+    }
+
+    private static void flip(Path file, long position) throws IOException
+    {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            var buffer = ByteBuffer.allocate(1);
+
+            channel.read(buffer, position);
+
+            buffer.put(0, (byte) (buffer.get(0) ^ 0x5a));
+
+            buffer.rewind();
+
+            channel.write(buffer, position);
+        }
+    }
+
+    private static List<Integer> range(int from, int to)
+    {
+        var list = new ArrayList<Integer>();
+
+        for (int i = from; i < to; i++)
+        {
+            list.add(i);
+        }
+
+        return list;
+    }
+
+    private static List<Integer> concat(List<Integer> first, List<Integer> second)
+    {
+        var list = new ArrayList<>(first);
+
+        list.addAll(second);
+
+        return list;
+    }
+
+    private static Object first(List<Integer> list)
+    {
+        return list.isEmpty() ? "-" : list.get(0);
+    }
+
+    private static Object last(List<Integer> list)
+    {
+        return list.isEmpty() ? "-" : list.get(list.size() - 1);
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (var files = Files.list(directory))
+        {
+            for (var file : files.toList())
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        Files.deleteIfExists(directory);
+    }
+}